@@ -0,0 +1,168 @@
+package com.diarymanager.benchmarks;
+
+import com.diarymanager.model.DiaryEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Deterministic synthetic diary corpus. Entry {@code i} is always the same entry (same id, title,
+ * dates and body), so benchmarks can overwrite existing entries without growing the corpus.
+ */
+public class CorpusGenerator {
+    static final String[] MOODS = { "", "😊 Happy", "😢 Sad", "🤩 Excited", "😌 Calm",
+            "😠 Angry", "🤔 Thoughtful", "😴 Tired", "🤗 Grateful" };
+
+    private static final String[] COMMON_WORDS = { "the", "and", "today", "was", "day", "work",
+            "home", "friends", "family", "dinner", "morning", "walk", "tired", "happy", "weekend",
+            "coffee", "meeting", "vacation", "beach", "book", "movie", "rain", "sunny", "city" };
+    private static final String[] SYLLABLES = { "ka", "lo", "mi", "ra", "ten", "su", "ve", "dor",
+            "pi", "an", "el", "mon", "ta", "ri", "go", "sel", "un", "ba", "fe", "ny" };
+    private static final String[] INLINE_TAGS = { "b", "i", "u", "span" };
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2021, 1, 1, 8, 0);
+
+    private final long seed;
+    private final int bodySize;
+    private final double htmlDensity;
+    private final String[] words;
+    private final double[] wordWeights;
+    private final String[] tags;
+    private final double moodSkew;
+    private final int maxTagsPerEntry;
+    private final double tagSkew;
+
+    /**
+     * @param bodySize     approximate number of visible characters per entry body
+     * @param htmlDensity  fraction of words wrapped in inline markup (0..1)
+     * @param vocabulary   number of distinct body words, drawn with a Zipf distribution
+     * @param tagCount     number of distinct tags
+     * @param moodSkew     how strongly moods favour the first ones in {@link #MOODS}: 1 is
+     *                     uniform, larger values skew towards no mood and "Happy"
+     * @param maxTagsPerEntry each entry gets zero to this many tags
+     * @param tagSkew      like moodSkew, for the tags; 1 is uniform
+     */
+    public CorpusGenerator(long seed, int bodySize, double htmlDensity, int vocabulary, int tagCount,
+                           double moodSkew, int maxTagsPerEntry, double tagSkew) {
+        this.seed = seed;
+        this.bodySize = bodySize;
+        this.htmlDensity = htmlDensity;
+        this.moodSkew = moodSkew;
+        this.maxTagsPerEntry = maxTagsPerEntry;
+        this.tagSkew = tagSkew;
+
+        Random random = new Random(seed);
+        words = new String[vocabulary];
+        for (int i = 0; i < vocabulary; i++) {
+            words[i] = i < COMMON_WORDS.length ? COMMON_WORDS[i] : syntheticWord(random);
+        }
+        wordWeights = zipfCumulative(vocabulary);
+
+        tags = new String[tagCount];
+        for (int i = 0; i < tagCount; i++) {
+            tags[i] = "tag-" + syntheticWord(random);
+        }
+    }
+
+    public static String idOf(int index) {
+        return UUID.nameUUIDFromBytes(("entry-" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    public DiaryEntry entry(int index) {
+        Random random = new Random(seed * 31 + index);
+
+        DiaryEntry entry = new DiaryEntry();
+        entry.setId(idOf(index));
+        entry.setTitle(capitalize(word(random)) + " " + word(random) + " " + index);
+        entry.setContent(body(random));
+        entry.setMood(MOODS[skewedIndex(random, MOODS.length, moodSkew)]);
+
+        int tagCount = random.nextInt(maxTagsPerEntry + 1);
+        if (tagCount > 0) {
+            String[] entryTags = new String[tagCount];
+            for (int i = 0; i < tagCount; i++) {
+                entryTags[i] = tags[skewedIndex(random, tags.length, tagSkew)];
+            }
+            entry.setTags(entryTags);
+        }
+
+        LocalDateTime created = EPOCH.plusMinutes(random.nextInt(5 * 365 * 24 * 60));
+        entry.setCreatedDate(created);
+        entry.setModifiedDate(created.plusMinutes(random.nextInt(7 * 24 * 60)));
+        return entry;
+    }
+
+    /** A word that appears in most entries. */
+    public String commonWord() {
+        return words[3];
+    }
+
+    /** A word from the tail of the vocabulary, present in only a few entries. */
+    public String rareWord() {
+        return words[words.length - 1];
+    }
+
+    /** The most used tag. */
+    public String commonTag() {
+        return tags[0];
+    }
+
+    private String body(Random random) {
+        StringBuilder html = new StringBuilder(bodySize * 2);
+        html.append("<html dir=\"ltr\"><head></head><body contenteditable=\"true\"><p>");
+        int visible = 0;
+        while (visible < bodySize) {
+            String word = word(random);
+            if (random.nextDouble() < htmlDensity) {
+                String tag = INLINE_TAGS[random.nextInt(INLINE_TAGS.length)];
+                html.append('<').append(tag).append('>').append(word).append("</").append(tag).append('>');
+            } else {
+                html.append(word);
+            }
+            visible += word.length() + 1;
+            if (random.nextInt(60) == 0) {
+                html.append("</p><p>");
+            } else {
+                html.append(' ');
+            }
+        }
+        html.append("</p></body></html>");
+        return html.toString();
+    }
+
+    // An index below size, favouring the low ones more the larger skew is
+    private static int skewedIndex(Random random, int size, double skew) {
+        return (int) (size * Math.pow(random.nextDouble(), skew));
+    }
+
+    private String word(Random random) {
+        int index = Arrays.binarySearch(wordWeights, random.nextDouble());
+        return words[Math.min(index < 0 ? -index - 1 : index, words.length - 1)];
+    }
+
+    private static double[] zipfCumulative(int size) {
+        double[] cumulative = new double[size];
+        double total = 0;
+        for (int i = 0; i < size; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+        for (int i = 0; i < size; i++) {
+            cumulative[i] /= total;
+        }
+        return cumulative;
+    }
+
+    private static String syntheticWord(Random random) {
+        StringBuilder word = new StringBuilder();
+        int syllables = 2 + random.nextInt(3);
+        for (int i = 0; i < syllables; i++) {
+            word.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return word.toString();
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,73 @@
+package com.diarymanager.benchmarks;
+
+import com.diarymanager.model.DiaryManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A diary of {@code entryCount} synthetic entries in a temporary directory. The corpus is written
+ * once per trial and then reopened, so the benchmarks see the same startup path as the app.
+ */
+@State(Scope.Benchmark)
+public class CorpusState {
+    @Param({ "1000", "10000", "100000" })
+    public int entryCount;
+
+    @Param({ "files", "journal" })
+    public String store;
+
+    @Param({ "2000" })
+    public int bodySize;
+
+    @Param({ "0.2" })
+    public double htmlDensity;
+
+    @Param({ "5000" })
+    public int vocabulary;
+
+    @Param({ "200" })
+    public int tagCount;
+
+    // 1 spreads moods evenly; larger values favour the first moods
+    @Param({ "1" })
+    public double moodSkew;
+
+    @Param({ "3" })
+    public int maxTagsPerEntry;
+
+    // Skewed towards the first tags by default, like real tag usage
+    @Param({ "3" })
+    public double tagSkew;
+
+    public CorpusGenerator generator;
+    public DiaryManager manager;
+    private Path baseDir;
+
+    @Setup(Level.Trial)
+    public void createCorpus() throws IOException {
+        System.setProperty("diary.store", store);
+        baseDir = Files.createTempDirectory("diary-bench");
+        generator = new CorpusGenerator(42, bodySize, htmlDensity, vocabulary, tagCount,
+                moodSkew, maxTagsPerEntry, tagSkew);
+
+        DiaryManager writer = new DiaryManager(baseDir);
+        for (int i = 0; i < entryCount; i++) {
+            writer.saveEntry(generator.entry(i));
+        }
+        writer.close();
+
+        manager = new DiaryManager(baseDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteCorpus() throws IOException {
+        manager.close();
+        try (Stream<Path> files = Files.walk(baseDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
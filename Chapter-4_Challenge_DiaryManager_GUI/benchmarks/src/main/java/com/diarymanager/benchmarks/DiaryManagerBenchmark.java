@@ -0,0 +1,134 @@
+package com.diarymanager.benchmarks;
+
+import com.diarymanager.model.DiaryEntry;
+import com.diarymanager.model.EntryQuery;
+import com.diarymanager.model.LiveSearch;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Throughput and latency percentiles (SampleTime) for the DiaryManager operations. Run through
+ * BenchmarkRunner, which also attaches the GC profiler for allocation rates.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiaryManagerBenchmark {
+    // Inside the five years of generated entry dates
+    private static final LocalDate MONTH_START = LocalDate.of(2023, 3, 1);
+
+    @Benchmark
+    public void saveEntry(CorpusState corpus) throws IOException {
+        // Rewrites an existing entry, so the corpus size stays fixed
+        corpus.manager.saveEntry(corpus.generator.entry(randomIndex(corpus)));
+    }
+
+    @Benchmark
+    public List<DiaryEntry> loadAllEntries(CorpusState corpus) throws IOException {
+        return corpus.manager.loadAllEntries();
+    }
+
+    @Benchmark
+    public DiaryEntry loadEntry(CorpusState corpus) throws IOException {
+        return corpus.manager.loadEntry(CorpusGenerator.idOf(randomIndex(corpus)));
+    }
+
+    @Benchmark
+    public void searchCommonWord(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries(corpus.generator.commonWord(), null, null));
+    }
+
+    @Benchmark
+    public void searchRareWord(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries(corpus.generator.rareWord(), null, null));
+    }
+
+    @Benchmark
+    public void searchQueryWithScopes(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries(corpus.generator.commonWord() + " mood:happy date:2023-03 NOT "
+                + corpus.generator.rareWord(), null, null, null, null));
+    }
+
+    // Scans every title
+    @Benchmark
+    public void searchTitle(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries("title:" + corpus.generator.rareWord().toUpperCase(), null, null, null, null));
+    }
+
+    @Benchmark
+    public void searchMisspeltWord(CorpusState corpus, Blackhole blackhole) {
+        // One letter doubled, as in "vaccation"
+        String word = corpus.generator.rareWord();
+        String typo = word.substring(0, 2) + word.substring(1);
+        blackhole.consume(corpus.manager.searchFuzzy(typo, null, null, null, null, 50, true));
+    }
+
+    // Reads every body: a rare word is in few entries, so the scan finds no early stop
+    @Benchmark
+    public void searchPatternScan(CorpusState corpus, Blackhole blackhole) throws IOException {
+        Pattern pattern = EntryQuery.pattern("/\\b" + corpus.generator.rareWord() + "s?\\b/");
+        blackhole.consume(corpus.manager.searchPattern(pattern, null, null, null, null, 50));
+    }
+
+    @Benchmark
+    public void searchByMood(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries("", CorpusGenerator.MOODS[1], null));
+    }
+
+    @Benchmark
+    public void searchByTag(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries(null, null, corpus.generator.commonTag(), null, null));
+    }
+
+    @Benchmark
+    public void searchByMonth(CorpusState corpus, Blackhole blackhole) {
+        blackhole.consume(corpus.manager.searchEntries(null, null, null, MONTH_START, MONTH_START.plusMonths(1).minusDays(1)));
+    }
+
+    // One keystroke after another, as the search panel sends them
+    @Benchmark
+    public void searchAsYouType(CorpusState corpus, Blackhole blackhole) {
+        LiveSearch live = new LiveSearch();
+        String query = corpus.generator.commonWord() + " " + corpus.generator.rareWord();
+        for (int length = 1; length <= query.length(); length++) {
+            blackhole.consume(corpus.manager.searchAsYouType(live, query.substring(0, length), null, null, null, 50));
+        }
+    }
+
+    @Benchmark
+    public boolean deleteEntry(CorpusState corpus, DeletedEntry deleted) throws IOException {
+        return corpus.manager.deleteEntry(deleted.entry.getId());
+    }
+
+    /**
+     * Picks the entry to delete and puts it back afterwards, outside the measured region, so
+     * every invocation deletes a present entry from a full-size corpus.
+     */
+    @State(Scope.Thread)
+    public static class DeletedEntry {
+        DiaryEntry entry;
+
+        @Setup(Level.Invocation)
+        public void pick(CorpusState corpus) {
+            entry = corpus.generator.entry(randomIndex(corpus));
+        }
+
+        @TearDown(Level.Invocation)
+        public void restore(CorpusState corpus) throws IOException {
+            corpus.manager.saveEntry(entry);
+        }
+    }
+
+    private static int randomIndex(CorpusState corpus) {
+        return ThreadLocalRandom.current().nextInt(corpus.entryCount);
+    }
+}
@@ -0,0 +1,63 @@
+package com.diarymanager.controller;
+
+import javafx.animation.PauseTransition;
+import javafx.util.Duration;
+
+/**
+ * Runs an action on the FX thread once triggers have stopped for a quiet period, but no later
+ * than maxWait after the first trigger of a burst, so continuous typing still saves regularly.
+ * Any number of triggers within a burst coalesce into one run. A single timer is reused for
+ * every trigger; all methods must be called on the FX thread.
+ */
+class DebouncedAction {
+    private final Duration quietPeriod;
+    private final Duration maxWait;
+    private final Runnable action;
+    private final PauseTransition timer = new PauseTransition();
+    // When the current burst started, or -1 when nothing is pending
+    private long burstStartNanos = -1;
+
+    DebouncedAction(Duration quietPeriod, Duration maxWait, Runnable action) {
+        this.quietPeriod = quietPeriod;
+        this.maxWait = maxWait;
+        this.action = action;
+        timer.setOnFinished(event -> fire());
+    }
+
+    void trigger() {
+        long now = System.nanoTime();
+        if (burstStartNanos < 0) burstStartNanos = now;
+
+        Duration waited = Duration.millis((now - burstStartNanos) / 1_000_000.0);
+        Duration untilMaxWait = maxWait.subtract(waited);
+        timer.stop();
+        if (untilMaxWait.lessThanOrEqualTo(Duration.ZERO)) {
+            fire();
+            return;
+        }
+        timer.setDuration(untilMaxWait.lessThan(quietPeriod) ? untilMaxWait : quietPeriod);
+        timer.playFromStart();
+    }
+
+    boolean isPending() {
+        return burstStartNanos >= 0;
+    }
+
+    /** Runs the pending action now instead of waiting for the timer. */
+    void flush() {
+        if (isPending()) {
+            timer.stop();
+            fire();
+        }
+    }
+
+    void cancel() {
+        timer.stop();
+        burstStartNanos = -1;
+    }
+
+    private void fire() {
+        burstStartNanos = -1;
+        action.run();
+    }
+}
@@ -1,19 +1,22 @@
 package com.diarymanager.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.VBox;
-import javafx.scene.layout.HBox;
-import javafx.geometry.Insets;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.concurrent.Service;
 import javafx.concurrent.Task;
 import com.diarymanager.model.DiaryEntry;
 import com.diarymanager.model.DiaryManager;
+import com.diarymanager.model.EntryChange;
+import com.diarymanager.model.EntryPage;
+import com.diarymanager.view.components.EntryListCell;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
+import java.util.*;
+import java.util.function.Consumer;
 
 public class EntryBrowserController {
     @FXML private ListView<DiaryEntry> entryListView;
@@ -29,9 +32,26 @@ public class EntryBrowserController {
     @FXML private ProgressIndicator progressIndicator;
     @FXML private Label lblStatus;
 
+    private static final Comparator<DiaryEntry> NEWEST_FIRST =
+            (e1, e2) -> e2.getModifiedDate().compareTo(e1.getModifiedDate());
+    private static final int PAGE_SIZE = 100;
+    // The next page is requested once a row this close to the end of the list is shown
+    private static final int PREFETCH_ROWS = 20;
+
     private DiaryManager diaryManager;
     private ObservableList<DiaryEntry> entries;
+    private final Map<String, DiaryEntry> entriesById = new HashMap<>();
+    // Saves and deletes from any window, applied in place instead of reloading everything
+    private final Consumer<List<EntryChange>> changeListener =
+            changes -> Platform.runLater(() -> applyChanges(changes));
+    private DiaryManager listeningTo;
     private DateTimeFormatter dateFormatter;
+    private final EntryListCell.DisplayCache displayCache = new EntryListCell.DisplayCache();
+    private Service<EntryPage> pageService;
+    private int loadGeneration;
+    private String nextCursor;
+    private boolean hasMore;
+    private int totalCount;
 
     @FXML
     public void initialize() {
@@ -41,7 +61,12 @@ public class EntryBrowserController {
 
         setupListView();
         setupButtons();
-        loadEntries();
+        // The browser is dropped by replacing the main window's center; stop listening then
+        entryListView.sceneProperty().addListener((observable, oldScene, newScene) -> {
+            if (newScene == null) stopListening();
+        });
+        // Deferred so a DiaryManager handed over right after FXML loading is used for the first load
+        Platform.runLater(this::loadEntries);
     }
 
     public void setDiaryManager(DiaryManager manager) {
@@ -49,60 +74,16 @@ public class EntryBrowserController {
     }
 
     private void setupListView() {
-        entryListView.setCellFactory(param -> new ListCell<>() {
-            @Override
-            protected void updateItem(DiaryEntry entry, boolean empty) {
-                super.updateItem(entry, empty);
-
-                if (empty || entry == null) {
-                    setText(null);
-                    setGraphic(null);
-                } else {
-                    HBox cellContent = new HBox(10);
-                    cellContent.setPadding(new Insets(5));
-
-                    // Mood icon
-                    Label moodIcon = new Label();
-                    moodIcon.setStyle("-fx-font-size: 18px;");
-                    if (entry.getMood() != null && !entry.getMood().isEmpty()) {
-                        String emoji = getMoodEmoji(entry.getMood());
-                        moodIcon.setText(emoji);
-                    }
-
-                    // Entry info
-                    VBox infoBox = new VBox(3);
-                    Label titleLabel = new Label(entry.getTitle());
-                    titleLabel.setStyle("-fx-font-weight: bold; -fx-font-size: 14px;");
-
-                    Label dateLabel = new Label(entry.getModifiedDate().format(dateFormatter));
-                    dateLabel.setStyle("-fx-text-fill: #666; -fx-font-size: 12px;");
-
-                    Label previewLabel = new Label(entry.getPreview(60));
-                    previewLabel.setStyle("-fx-text-fill: #888; -fx-font-size: 11px;");
-                    previewLabel.setWrapText(true);
-
-                    infoBox.getChildren().addAll(titleLabel, dateLabel, previewLabel);
-
-                    cellContent.getChildren().addAll(moodIcon, infoBox);
-                    setGraphic(cellContent);
-                }
-            }
-        });
+        entryListView.setCellFactory(param -> new EntryListCell(displayCache, this::rowShown));
 
         entryListView.getSelectionModel().selectedItemProperty().addListener(
                 (observable, oldValue, newValue) -> showEntryDetails(newValue));
     }
 
-    private String getMoodEmoji(String mood) {
-        if (mood.contains("Happy")) return "😊";
-        if (mood.contains("Sad")) return "😢";
-        if (mood.contains("Excited")) return "🤩";
-        if (mood.contains("Calm")) return "😌";
-        if (mood.contains("Angry")) return "😠";
-        if (mood.contains("Thoughtful")) return "🤔";
-        if (mood.contains("Tired")) return "😴";
-        if (mood.contains("Grateful")) return "🤗";
-        return "📝";
+    private void rowShown(int index) {
+        if (index >= entries.size() - PREFETCH_ROWS) {
+            loadNextPage();
+        }
     }
 
     private void setupButtons() {
@@ -120,35 +101,156 @@ public class EntryBrowserController {
     }
 
     private void loadEntries() {
+        // A second DiaryManager would open the same store with its own writer and index
         if (diaryManager == null) {
-            diaryManager = new DiaryManager();
+            throw new IllegalStateException("DiaryManager was not set on the entry browser");
+        }
+        if (listeningTo != diaryManager) {
+            stopListening();
+            diaryManager.addChangeListener(changeListener);
+            listeningTo = diaryManager;
         }
 
+        if (pageService != null && pageService.isRunning()) {
+            pageService.cancel();
+        }
+
+        entries.clear();
+        entriesById.clear();
+        displayCache.clear();
+        clearDetails();
+
+        // Only the first page is read now; the list asks for more as it is scrolled
+        loadGeneration++;
+        nextCursor = null;
+        hasMore = true;
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (!hasMore || (pageService != null && pageService.isRunning())) return;
+
         progressIndicator.setVisible(true);
         lblStatus.setText("Loading entries...");
 
-        Service<List<DiaryEntry>> loadService = diaryManager.loadAllEntriesAsync();
-        loadService.setOnSucceeded(event -> {
-            entries.clear();
-            entries.addAll(loadService.getValue());
+        int generation = loadGeneration;
+        Service<EntryPage> pageService = diaryManager.loadEntriesPageAsync(nextCursor, PAGE_SIZE);
+        this.pageService = pageService;
+        pageService.setOnSucceeded(event -> {
+            if (generation != loadGeneration) return; // a reload started meanwhile
             progressIndicator.setVisible(false);
-            lblStatus.setText("Loaded " + entries.size() + " entries");
 
-            if (!entries.isEmpty()) {
-                entryListView.getSelectionModel().selectFirst();
-            } else {
+            EntryPage page = pageService.getValue();
+            nextCursor = page.getNextCursor();
+            hasMore = page.hasMore();
+            totalCount = page.getTotalCount();
+            mergeEntries(new ArrayList<>(page.getEntries()));
+            updateStatus();
+
+            if (entries.isEmpty() && !hasMore) {
                 clearDetails();
+            } else if (page.getEntries().isEmpty() && hasMore) {
+                loadNextPage(); // everything on it was deleted meanwhile, so no row will ask
             }
         });
 
-        loadService.setOnFailed(event -> {
+        pageService.setOnFailed(event -> {
             progressIndicator.setVisible(false);
             lblStatus.setText("Failed to load entries");
             showAlert("Load Error", "Failed to load diary entries: " +
-                    loadService.getException().getMessage());
+                    pageService.getException().getMessage());
+        });
+
+        pageService.setOnCancelled(event -> {
+            // A newer load replaced this one, or the background queue was full
+            if (generation != loadGeneration) return;
+            progressIndicator.setVisible(false);
+            lblStatus.setText("Loading cancelled");
         });
 
-        loadService.start();
+        pageService.start();
+    }
+
+    private void updateStatus() {
+        lblStatus.setText(hasMore
+                ? "Showing " + entries.size() + " of " + totalCount + " entries"
+                : entries.size() + " entries");
+    }
+
+    private void stopListening() {
+        if (listeningTo != null) {
+            listeningTo.removeChangeListener(changeListener);
+            listeningTo = null;
+        }
+    }
+
+    private void mergeEntries(List<DiaryEntry> batch) {
+        boolean wasEmpty = entries.isEmpty();
+        // A change event that arrived during the load already brought a newer copy
+        batch.removeIf(entry -> entriesById.putIfAbsent(entry.getId(), entry) != null);
+        if (batch.isEmpty()) return;
+        batch.sort(NEWEST_FIRST);
+
+        if (wasEmpty || NEWEST_FIRST.compare(entries.get(entries.size() - 1), batch.get(0)) <= 0) {
+            // Common case: the batch belongs after everything already shown
+            entries.addAll(batch);
+        } else {
+            for (DiaryEntry entry : batch) {
+                int index = Collections.binarySearch(entries, entry, NEWEST_FIRST);
+                entries.add(index < 0 ? -index - 1 : index, entry);
+            }
+        }
+
+        if (wasEmpty) {
+            entryListView.getSelectionModel().selectFirst();
+        }
+    }
+
+    private void applyChanges(List<EntryChange> changes) {
+        DiaryEntry selected = entryListView.getSelectionModel().getSelectedItem();
+        DiaryEntry reselect = null;
+
+        for (EntryChange change : changes) {
+            DiaryEntry previous = entriesById.remove(change.getEntryId());
+            if (previous != null) {
+                entries.remove(positionOf(previous));
+            }
+            if (change.getType() == EntryChange.Type.ADDED) totalCount++;
+            if (change.getType() == EntryChange.Type.DELETED) totalCount--;
+
+            DiaryEntry entry = change.getEntry();
+            // Below the last loaded page the entry arrives with a later page instead
+            boolean loaded = entry != null && (!hasMore || entries.isEmpty()
+                    || NEWEST_FIRST.compare(entry, entries.get(entries.size() - 1)) <= 0);
+            if (loaded) {
+                entriesById.put(entry.getId(), entry);
+                int index = Collections.binarySearch(entries, entry, NEWEST_FIRST);
+                entries.add(index < 0 ? -index - 1 : index, entry);
+                if (previous != null && previous == selected) reselect = entry;
+            }
+        }
+
+        if (reselect != null) {
+            entryListView.getSelectionModel().select(reselect);
+        } else if (selected != null && !entriesById.containsKey(selected.getId()) && !entries.isEmpty()) {
+            entryListView.getSelectionModel().selectFirst();
+        } else if (entries.isEmpty()) {
+            clearDetails();
+        }
+        updateStatus();
+    }
+
+    // The list is sorted, so find the entry by date and then among entries with the same date
+    private int positionOf(DiaryEntry entry) {
+        int index = Collections.binarySearch(entries, entry, NEWEST_FIRST);
+        if (index < 0) return entries.indexOf(entry);
+        for (int i = index; i >= 0 && NEWEST_FIRST.compare(entries.get(i), entry) == 0; i--) {
+            if (entries.get(i) == entry) return i;
+        }
+        for (int i = index + 1; i < entries.size() && NEWEST_FIRST.compare(entries.get(i), entry) == 0; i++) {
+            if (entries.get(i) == entry) return i;
+        }
+        return entries.indexOf(entry);
     }
 
     private void showEntryDetails(DiaryEntry entry) {
@@ -175,15 +277,8 @@ public class EntryBrowserController {
             lblTags.setVisible(false);
         }
 
-        // Show content preview (strip HTML tags)
-        String content = entry.getContent();
-        if (content != null) {
-            String plainText = content.replaceAll("<[^>]*>", "");
-            previewArea.setText(plainText.length() > 500 ?
-                    plainText.substring(0, 500) + "..." : plainText);
-        } else {
-            previewArea.setText("");
-        }
+        // Show content preview (cached plain text, no need to load the body)
+        previewArea.setText(entry.getPreview(DiaryEntry.PREVIEW_LENGTH));
     }
 
     private void clearDetails() {
@@ -221,7 +316,10 @@ public class EntryBrowserController {
             deleteService.setOnSucceeded(event -> {
                 progressIndicator.setVisible(false);
                 if (deleteService.getValue()) {
-                    entries.remove(selected);
+                    // The change event may already have removed it
+                    if (entriesById.remove(selected.getId()) != null) {
+                        entries.remove(positionOf(selected));
+                    }
                     lblStatus.setText("Entry deleted successfully");
                     if (!entries.isEmpty()) {
                         entryListView.getSelectionModel().selectFirst();
@@ -240,6 +338,11 @@ public class EntryBrowserController {
                         deleteService.getException().getMessage());
             });
 
+            deleteService.setOnCancelled(event -> {
+                progressIndicator.setVisible(false);
+                lblStatus.setText("Too busy to delete, please try again");
+            });
+
             deleteService.start();
         }
     }
@@ -1,15 +1,17 @@
 package com.diarymanager.controller;
 
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.web.HTMLEditor;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import com.diarymanager.model.DiaryEntry;
 import com.diarymanager.model.DiaryManager;
-import javafx.concurrent.Service;
 import java.time.LocalDateTime;
+import java.util.concurrent.CompletionException;
 
 public class EntryEditorController {
     @FXML private TextField txtTitle;
@@ -25,12 +27,12 @@ public class EntryEditorController {
     private DiaryManager diaryManager;
     private DiaryEntry currentEntry;
     private boolean saved = false;
-    private Service<?> autoSaveService;
+    // Saves 2 seconds after typing stops, and at least every 10 seconds while it goes on
+    private final DebouncedAction autoSave =
+            new DebouncedAction(Duration.seconds(2), Duration.seconds(10), () -> saveEntry(false));
 
     @FXML
     public void initialize() {
-        diaryManager = new DiaryManager();
-
         // Setup mood combobox
         cmbMood.getItems().addAll("", "😊 Happy", "😢 Sad", "🤩 Excited", "😌 Calm",
                 "😠 Angry", "🤔 Thoughtful", "😴 Tired", "🤗 Grateful");
@@ -45,6 +47,10 @@ public class EntryEditorController {
         txtTitle.requestFocus();
     }
 
+    public void setDiaryManager(DiaryManager manager) {
+        this.diaryManager = manager;
+    }
+
     public void setEntryForEditing(DiaryEntry entry) {
         this.currentEntry = entry;
         txtTitle.setText(entry.getTitle());
@@ -55,6 +61,8 @@ public class EntryEditorController {
         if (entry.getTags() != null) {
             txtTags.setText(String.join(", ", entry.getTags()));
         }
+        // Filling the fields is not an edit
+        autoSave.cancel();
     }
 
     private void setupAutoSave() {
@@ -69,24 +77,7 @@ public class EntryEditorController {
     }
 
     private void scheduleAutoSave() {
-        if (autoSaveService != null && autoSaveService.isRunning()) {
-            autoSaveService.cancel();
-        }
-
-        autoSaveService = new Service<Void>() {
-            @Override
-            protected javafx.concurrent.Task<Void> createTask() {
-                return new javafx.concurrent.Task<>() {
-                    @Override
-                    protected Void call() throws Exception {
-                        Thread.sleep(2000); // Wait 2 seconds before auto-saving
-                        saveEntry(false);
-                        return null;
-                    }
-                };
-            }
-        };
-        autoSaveService.start();
+        autoSave.trigger();
     }
 
     private void setupToolbar() {
@@ -123,11 +114,18 @@ public class EntryEditorController {
 
     private void saveEntry(boolean showConfirmation) {
         if (txtTitle.getText().trim().isEmpty()) {
-            showAlert("Validation Error", "Please enter a title for your entry.");
+            // Autosave just waits until there is a title
+            if (showConfirmation) {
+                showAlert("Validation Error", "Please enter a title for your entry.");
+            }
             return;
         }
+        autoSave.cancel();
 
-        DiaryEntry entry = currentEntry != null ? currentEntry : new DiaryEntry();
+        if (currentEntry == null) {
+            currentEntry = new DiaryEntry();
+        }
+        DiaryEntry entry = currentEntry;
         entry.setTitle(txtTitle.getText().trim());
         entry.setContent(htmlEditor.getHtmlText());
         entry.setModifiedDate(LocalDateTime.now());
@@ -140,28 +138,31 @@ public class EntryEditorController {
             entry.setTags(txtTags.getText().split(",\\s*"));
         }
 
+        // A second DiaryManager would open the same store with its own writer and index
+        if (diaryManager == null) {
+            throw new IllegalStateException("DiaryManager was not set on the entry editor");
+        }
+
         progressIndicator.setVisible(true);
         lblStatus.setText("Saving...");
 
-        Service<Void> saveService = diaryManager.saveEntryAsync(entry);
-        saveService.setOnSucceeded(event -> {
+        // The writer gets its own copy, so later edits cannot change what it is writing
+        diaryManager.saveEntryAsync(entry.copy()).whenComplete((result, error) -> Platform.runLater(() -> {
             progressIndicator.setVisible(false);
+            if (error != null) {
+                lblStatus.setText("Save failed!");
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                showAlert("Save Error", "Failed to save entry: " + cause.getMessage());
+                return;
+            }
+
             saved = true;
             lblStatus.setText("Saved successfully!");
 
             if (showConfirmation) {
                 closeWindow();
             }
-        });
-
-        saveService.setOnFailed(event -> {
-            progressIndicator.setVisible(false);
-            lblStatus.setText("Save failed!");
-            showAlert("Save Error", "Failed to save entry: " +
-                    saveService.getException().getMessage());
-        });
-
-        saveService.start();
+        }));
     }
 
     @FXML
@@ -191,6 +192,7 @@ public class EntryEditorController {
     }
 
     private void closeWindow() {
+        autoSave.cancel();
         Stage stage = (Stage) btnSave.getScene().getWindow();
         stage.close();
     }
@@ -7,16 +7,13 @@ import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
 import javafx.scene.layout.BorderPane;
-import javafx.scene.layout.GridPane;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import com.diarymanager.model.DiaryEntry;
 import com.diarymanager.model.DiaryManager;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import com.diarymanager.view.components.SearchPanel;
 import java.io.IOException;
-import java.time.LocalDate;
 
 public class MainController {
     @FXML private BorderPane mainContainer;
@@ -74,6 +71,7 @@ public class MainController {
             Parent editorRoot = loader.load();
 
             EntryEditorController controller = loader.getController();
+            controller.setDiaryManager(diaryManager);
             if (entry != null) {
                 controller.setEntryForEditing(entry);
             }
@@ -112,7 +110,7 @@ public class MainController {
             controller.setDiaryManager(diaryManager);
 
             // Replace center content
-            mainContainer.setCenter(browserRoot);
+            showInCenter(browserRoot);
             updateStatus("Browse mode");
 
         } catch (IOException e) {
@@ -121,135 +119,28 @@ public class MainController {
     }
 
     private void openSearch() {
-        try {
-            // Create search dialog
-            Dialog<DiaryEntry> searchDialog = new Dialog<>();
-            searchDialog.setTitle("Search Diary Entries");
-            searchDialog.setHeaderText("Find entries by content, mood, or date");
-
-            // Set dialog buttons
-            ButtonType searchButtonType = new ButtonType("Search", ButtonBar.ButtonData.OK_DONE);
-            searchDialog.getDialogPane().getButtonTypes().addAll(searchButtonType, ButtonType.CANCEL);
-
-            // Create search form
-            GridPane grid = new GridPane();
-            grid.setHgap(10);
-            grid.setVgap(10);
-            grid.setPadding(new javafx.geometry.Insets(20, 150, 10, 10));
-
-            TextField txtSearch = new TextField();
-            txtSearch.setPromptText("Search term");
-
-            ComboBox<String> cmbMood = new ComboBox<>();
-            cmbMood.setPromptText("Select mood");
-            cmbMood.getItems().addAll("Happy", "Sad", "Excited", "Calm", "Angry", "Thoughtful");
-
-            DatePicker datePicker = new DatePicker();
-            datePicker.setPromptText("Select date");
-
-            grid.add(new Label("Search:"), 0, 0);
-            grid.add(txtSearch, 1, 0);
-            grid.add(new Label("Mood:"), 0, 1);
-            grid.add(cmbMood, 1, 1);
-            grid.add(new Label("Date:"), 0, 2);
-            grid.add(datePicker, 1, 2);
-
-            searchDialog.getDialogPane().setContent(grid);
-
-            // Enable/Disable search button based on input
-            Node searchButton = searchDialog.getDialogPane().lookupButton(searchButtonType);
-            searchButton.setDisable(true);
-
-            txtSearch.textProperty().addListener((observable, oldValue, newValue) -> {
-                searchButton.setDisable(newValue.trim().isEmpty() &&
-                        cmbMood.getValue() == null &&
-                        datePicker.getValue() == null);
-            });
-
-            cmbMood.valueProperty().addListener((observable, oldValue, newValue) -> {
-                searchButton.setDisable(txtSearch.getText().trim().isEmpty() &&
-                        newValue == null &&
-                        datePicker.getValue() == null);
-            });
-
-            datePicker.valueProperty().addListener((observable, oldValue, newValue) -> {
-                searchButton.setDisable(txtSearch.getText().trim().isEmpty() &&
-                        cmbMood.getValue() == null &&
-                        newValue == null);
-            });
-
-            searchDialog.setResultConverter(dialogButton -> {
-                if (dialogButton == searchButtonType) {
-                    // Perform search and show results
-                    performSearch(txtSearch.getText(), cmbMood.getValue(), datePicker.getValue());
-                }
-                return null;
-            });
-
-            searchDialog.showAndWait();
-
-        } catch (Exception e) {
-            showError("Search Error", e.getMessage());
+        // Already open: keep the query and results
+        if (mainContainer.getCenter() instanceof SearchPanel) {
+            ((SearchPanel) mainContainer.getCenter()).focusSearchField();
+            return;
         }
+        SearchPanel searchPanel = new SearchPanel();
+        searchPanel.setDiaryManager(diaryManager);
+        searchPanel.setOnOpenEntry(this::openEditor);
+        searchPanel.setOnSearch(() -> updateStatus("Searching..."));
+
+        // Replace center content
+        showInCenter(searchPanel);
+        searchPanel.focusSearchField();
+        updateStatus("Search mode");
     }
 
-    private void performSearch(String query, String mood, LocalDate date) {
-        try {
-            java.util.Date utilDate = null;
-            if (date != null) {
-                utilDate = java.sql.Date.valueOf(date);
-            }
-
-            var results = diaryManager.searchEntries(query, mood, utilDate);
-
-            // Create results window
-            Stage resultsStage = new Stage();
-            resultsStage.setTitle("Search Results");
-            resultsStage.initModality(Modality.WINDOW_MODAL);
-            resultsStage.initOwner(mainContainer.getScene().getWindow());
-
-            ListView<DiaryEntry> resultsList = new ListView<>();
-            ObservableList<DiaryEntry> items = FXCollections.observableArrayList(results);
-            resultsList.setItems(items);
-            resultsList.setCellFactory(param -> new ListCell<>() {
-                @Override
-                protected void updateItem(DiaryEntry entry, boolean empty) {
-                    super.updateItem(entry, empty);
-                    if (empty || entry == null) {
-                        setText(null);
-                    } else {
-                        setText(entry.getTitle() + " - " + entry.getFormattedDate());
-                        setTooltip(new Tooltip(entry.getPreview(100)));
-                    }
-                }
-            });
-
-            resultsList.setOnMouseClicked(event -> {
-                if (event.getClickCount() == 2) {
-                    DiaryEntry selected = resultsList.getSelectionModel().getSelectedItem();
-                    if (selected != null) {
-                        openEditor(selected);
-                        resultsStage.close();
-                    }
-                }
-            });
-
-            VBox root = new VBox(10);
-            root.setPadding(new javafx.geometry.Insets(10));
-            root.getChildren().addAll(
-                    new Label("Found " + results.size() + " entries:"),
-                    resultsList
-            );
-
-            Scene scene = new Scene(root, 400, 300);
-            resultsStage.setScene(scene);
-            resultsStage.show();
-
-            updateStatus("Search completed: " + results.size() + " results");
-
-        } catch (Exception e) {
-            showError("Search Failed", e.getMessage());
+    private void showInCenter(Node content) {
+        // Results of a search still running are not wanted any more
+        if (mainContainer.getCenter() instanceof SearchPanel) {
+            ((SearchPanel) mainContainer.getCenter()).cancelSearches();
         }
+        mainContainer.setCenter(content);
     }
 
     private void openSettings() {
@@ -0,0 +1,102 @@
+package com.diarymanager.model;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.function.IntConsumer;
+
+/**
+ * BK-tree of the search index's terms under Levenshtein distance, for finding the terms a few
+ * typos away from a word. Each child hangs under its distance to the parent node, and by the
+ * triangle inequality a lookup within distance {@code d} of a word at distance {@code k} from a
+ * node only needs the node's children from {@code k - d} to {@code k + d}, so it visits a small
+ * part of the vocabulary. Keys are folded terms; a node lists the ids of all terms folding to
+ * its key. Not thread-safe; the index guards it with its own lock.
+ */
+final class BkTree {
+    private Node root;
+
+    private static final class Node {
+        final String key;
+        int[] termIds = new int[1];
+        int termCount;
+        // Indexed by distance to this node
+        Node[] children;
+
+        Node(String key, int termId) {
+            this.key = key;
+            addTerm(termId);
+        }
+
+        void addTerm(int termId) {
+            if (termCount == termIds.length) termIds = Arrays.copyOf(termIds, termCount * 2);
+            termIds[termCount++] = termId;
+        }
+    }
+
+    void add(String key, int termId) {
+        if (root == null) {
+            root = new Node(key, termId);
+            return;
+        }
+        Node node = root;
+        while (true) {
+            int distance = distance(key, node.key);
+            if (distance == 0) {
+                node.addTerm(termId);
+                return;
+            }
+            if (node.children == null) {
+                node.children = new Node[distance + 1];
+            } else if (node.children.length <= distance) {
+                node.children = Arrays.copyOf(node.children, distance + 1);
+            }
+            if (node.children[distance] == null) {
+                node.children[distance] = new Node(key, termId);
+                return;
+            }
+            node = node.children[distance];
+        }
+    }
+
+    /** Passes the ids of the terms whose key is within {@code maxDistance} of {@code key}. */
+    void search(String key, int maxDistance, IntConsumer found) {
+        if (root == null) return;
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.pop();
+            int distance = distance(key, node.key);
+            if (distance <= maxDistance) {
+                for (int i = 0; i < node.termCount; i++) found.accept(node.termIds[i]);
+            }
+            if (node.children == null) continue;
+            int last = Math.min(node.children.length - 1, distance + maxDistance);
+            for (int d = Math.max(1, distance - maxDistance); d <= last; d++) {
+                if (node.children[d] != null) pending.push(node.children[d]);
+            }
+        }
+    }
+
+    void clear() {
+        root = null;
+    }
+
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
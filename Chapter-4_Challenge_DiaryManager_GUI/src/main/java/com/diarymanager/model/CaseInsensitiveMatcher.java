@@ -0,0 +1,55 @@
+package com.diarymanager.model;
+
+import java.util.Arrays;
+
+/**
+ * Finds a fixed string in text ignoring case, without lowercasing the text. The needle is
+ * folded once and Boyer-Moore-Horspool shifts are precomputed for it; the text is read through
+ * its CharSequence and folded one char at a time, so scanning a title or a whole body allocates
+ * nothing. Chars compare like in {@code String.regionMatches} with ignoreCase.
+ */
+final class CaseInsensitiveMatcher {
+    // Folded needle
+    private final char[] needle;
+    // How far the window may move when its last char is this one, by the folded char's low
+    // byte; chars sharing a low byte keep the smallest shift of them, which is always safe
+    private final int[] shifts = new int[256];
+
+    CaseInsensitiveMatcher(String needle) {
+        this.needle = new char[needle.length()];
+        for (int i = 0; i < needle.length(); i++) {
+            this.needle[i] = fold(needle.charAt(i));
+        }
+        Arrays.fill(shifts, Math.max(1, this.needle.length));
+        for (int i = 0; i < this.needle.length - 1; i++) {
+            shifts[this.needle[i] & 0xFF] = this.needle.length - 1 - i;
+        }
+    }
+
+    boolean foundIn(CharSequence text) {
+        return text != null && indexIn(text, 0, text.length()) >= 0;
+    }
+
+    /** Start of the first occurrence within [from, to) of the text, or -1. */
+    int indexIn(CharSequence text, int from, int to) {
+        int last = needle.length - 1;
+        if (last < 0) return from <= to ? from : -1;
+
+        int position = from;
+        while (position + last < to) {
+            char c = fold(text.charAt(position + last));
+            if (c == needle[last]) {
+                int i = last - 1;
+                while (i >= 0 && fold(text.charAt(position + i)) == needle[i]) i--;
+                if (i < 0) return position;
+            }
+            position += shifts[c & 0xFF];
+        }
+        return -1;
+    }
+
+    static char fold(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
@@ -0,0 +1,71 @@
+package com.diarymanager.model;
+
+/**
+ * The change between two versions of an entry body as one replaced range: everything except a
+ * common prefix and suffix is replaced by {@code inserted}. Typing between two autosaves nearly
+ * always touches one contiguous region, so the delta is usually a few hundred characters even
+ * for a multi-megabyte body. The base version's length and hash are recorded so a delta is never
+ * applied to a body it was not computed against.
+ */
+public final class ContentDelta {
+    // Deltas a store lets pile up after a full copy before it writes a full copy again, so
+    // replaying a change log on load stays cheap
+    static final int MAX_CHAIN_LENGTH = 100;
+
+    private final int baseLength;
+    private final int baseHash;
+    private final int prefixLength;
+    private final int suffixLength;
+    private final String inserted;
+
+    ContentDelta(int baseLength, int baseHash, int prefixLength, int suffixLength, String inserted) {
+        this.baseLength = baseLength;
+        this.baseHash = baseHash;
+        this.prefixLength = prefixLength;
+        this.suffixLength = suffixLength;
+        this.inserted = inserted;
+    }
+
+    public static ContentDelta between(String base, String target) {
+        int max = Math.min(base.length(), target.length());
+        int prefix = 0;
+        while (prefix < max && base.charAt(prefix) == target.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix
+                && base.charAt(base.length() - 1 - suffix) == target.charAt(target.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return new ContentDelta(base.length(), base.hashCode(), prefix, suffix,
+                target.substring(prefix, target.length() - suffix));
+    }
+
+    public boolean appliesTo(String base) {
+        return base != null && base.length() == baseLength && base.hashCode() == baseHash;
+    }
+
+    public String applyTo(String base) {
+        if (!appliesTo(base)) {
+            throw new IllegalArgumentException("Delta was computed against a different version");
+        }
+        return base.substring(0, prefixLength) + inserted + base.substring(base.length() - suffixLength);
+    }
+
+    // For replaying a chain into one buffer; the caller has checked the chain's first base
+    void applyTo(StringBuilder body) {
+        if (body.length() != baseLength) {
+            throw new IllegalArgumentException("Delta was computed against a different version");
+        }
+        body.replace(prefixLength, body.length() - suffixLength, inserted);
+    }
+
+    /** Characters this delta carries; the rest of the body is shared with the base. */
+    public int size() {
+        return inserted.length();
+    }
+
+    int getBaseLength() { return baseLength; }
+    int getBaseHash() { return baseHash; }
+    int getPrefixLength() { return prefixLength; }
+    int getSuffixLength() { return suffixLength; }
+    String getInserted() { return inserted; }
+}
@@ -1,17 +1,31 @@
 package com.diarymanager.model;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class DiaryEntry {
+    // Longest preview callers ask for (the browser's details pane)
+    public static final int PREVIEW_LENGTH = 500;
+
     private String id;
     private String title;
-    private String content;
+    private volatile String content;
+    // Fetches the body on first getContent() for entries loaded header-only
+    private ContentLoader contentLoader;
+    // Plain text of the body, whitespace collapsed, cut to PREVIEW_LENGTH + 1 chars so callers can
+    // still tell whether it was shortened; null until computed or read from the entry header
+    private volatile String previewText;
     private LocalDateTime createdDate;
     private LocalDateTime modifiedDate;
     private String[] tags;
     private String mood;
 
+    public interface ContentLoader {
+        String load() throws IOException;
+    }
+
     public DiaryEntry() {
         this.id = java.util.UUID.randomUUID().toString();
         this.createdDate = LocalDateTime.now();
@@ -24,6 +38,23 @@ public class DiaryEntry {
         this.content = content;
     }
 
+    /**
+     * Independent copy with the body loaded, safe to hand to another thread while this entry
+     * keeps being edited.
+     */
+    public DiaryEntry copy() {
+        DiaryEntry copy = new DiaryEntry();
+        copy.id = id;
+        copy.title = title;
+        copy.content = getContent();
+        copy.previewText = previewText;
+        copy.createdDate = createdDate;
+        copy.modifiedDate = modifiedDate;
+        copy.tags = tags != null ? tags.clone() : null;
+        copy.mood = mood;
+        return copy;
+    }
+
     // Getters and Setters
     public String getId() { return id; }
     public void setId(String id) { this.id = id; }
@@ -34,12 +65,35 @@ public class DiaryEntry {
         this.modifiedDate = LocalDateTime.now();
     }
 
-    public String getContent() { return content; }
-    public void setContent(String content) {
+    public String getContent() {
+        if (content == null && contentLoader != null) {
+            synchronized (this) {
+                if (content == null && contentLoader != null) {
+                    try {
+                        content = contentLoader.load();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to load entry content", e);
+                    }
+                    contentLoader = null;
+                }
+            }
+        }
+        return content;
+    }
+    public synchronized void setContent(String content) {
         this.content = content;
+        this.contentLoader = null;
+        this.previewText = null;
         this.modifiedDate = LocalDateTime.now();
     }
 
+    // Defers the body until first use; does not count as a modification
+    public synchronized void setContentLoader(ContentLoader loader) {
+        this.content = null;
+        this.contentLoader = loader;
+    }
+    public boolean isContentLoaded() { return content != null; }
+
     public LocalDateTime getCreatedDate() { return createdDate; }
     public void setCreatedDate(LocalDateTime createdDate) { this.createdDate = createdDate; }
 
@@ -64,9 +118,22 @@ public class DiaryEntry {
     }
 
     public String getPreview(int maxLength) {
-        if (content == null) return "";
-        String plainText = content.replaceAll("<[^>]*>", ""); // Remove HTML tags
+        String plainText = maxLength <= PREVIEW_LENGTH
+                ? getPreviewText()
+                : HtmlTextExtractor.toPlainText(getContent(), maxLength + 1);
         if (plainText.length() <= maxLength) return plainText;
         return plainText.substring(0, maxLength) + "...";
     }
+
+    // Computed once per content change; entries read from disk get it from their header
+    public String getPreviewText() {
+        String preview = previewText;
+        if (preview == null) {
+            preview = HtmlTextExtractor.toPlainText(getContent(), PREVIEW_LENGTH + 1);
+            previewText = preview;
+        }
+        return preview;
+    }
+    public void setPreviewText(String previewText) { this.previewText = previewText; }
+
 }
\ No newline at end of file
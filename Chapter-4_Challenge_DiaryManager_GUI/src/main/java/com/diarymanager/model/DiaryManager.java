@@ -1,69 +1,234 @@
 package com.diarymanager.model;
 
+import javafx.application.Platform;
 import javafx.concurrent.Task;
 import javafx.concurrent.Service;
 import java.io.*;
 import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.time.ZoneId;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.StreamSupport;
 
-public class DiaryManager {
+public final class DiaryManager {
     private static final String DIARY_DIR = "diary-entries";
-    private static final String FILE_EXTENSION = ".diary";
-    private static final DateTimeFormatter DATE_FORMATTER =
-            DateTimeFormatter.ofPattern("yyyy-MM-dd_HH-mm-ss");
+    private static final String JOURNAL_DIR = "diary-journal";
+    private static final String INDEX_DIR = "diary-index";
+    private static final String CATALOG_SNAPSHOT = "catalog.idx";
+    // "files" (one .diary file per entry, the default) or "journal" (append-only segment log)
+    private static final String STORE_PROPERTY = "diary.store";
+    // Background task pool: number of workers, and "true" to run them on virtual threads
+    private static final String WORKERS_PROPERTY = "diary.workers";
+    private static final String VIRTUAL_THREADS_PROPERTY = "diary.virtualThreads";
+    private static final int TASK_QUEUE_CAPACITY = 32;
+    private static final int STREAM_BATCH_SIZE = 50;
+    private static final long STREAM_BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    // Most edits a fuzzy search allows between a query word and an entry's word
+    private static final int MAX_TYPOS = 2;
+
+    // Bounded pool that parses entry files concurrently; fork-join workers are daemon threads
+    private static final ForkJoinPool LOAD_POOL =
+            new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private final DiaryStore store;
+    private final EntryCatalog catalog = new EntryCatalog();
+    private final SearchIndex searchIndex;
+    private final Path catalogSnapshot;
+    private final EntryWriter writer;
+    private final ThreadPoolExecutor taskExecutor = createTaskExecutor();
+    private final List<Consumer<List<EntryChange>>> changeListeners = new CopyOnWriteArrayList<>();
+    // Ids that change listeners know as existing, to tell additions from updates
+    private final Set<String> publishedIds = ConcurrentHashMap.newKeySet();
+    private final Thread shutdownHook;
+    private boolean closed;
 
     public DiaryManager() {
-        ensureDirectoryExists();
+        this(Paths.get(""));
     }
 
-    private void ensureDirectoryExists() {
-        Path dir = Paths.get(DIARY_DIR);
-        if (!Files.exists(dir)) {
-            try {
-                Files.createDirectories(dir);
-            } catch (IOException e) {
-                throw new RuntimeException("Failed to create diary directory", e);
+    // All diary data lives in directories under baseDir; the app uses the working directory
+    public DiaryManager(Path baseDir) {
+        store = openStore(baseDir);
+        searchIndex = new SearchIndex(baseDir.resolve(INDEX_DIR).resolve("search.idx"));
+        catalogSnapshot = baseDir.resolve(INDEX_DIR).resolve(CATALOG_SNAPSHOT);
+        openCatalogAndIndex();
+        catalog.getAll().forEach(info -> publishedIds.add(info.getId()));
+        writer = new EntryWriter(store, searchIndex, this::publishChanges);
+
+        // The writer is a daemon so it never keeps the app alive; flush everything on exit instead
+        shutdownHook = new Thread(this::closeQuietly, "diary-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    private DiaryStore openStore(Path baseDir) {
+        try {
+            if ("journal".equalsIgnoreCase(System.getProperty(STORE_PROPERTY))) {
+                return new JournalDiaryStore(baseDir.resolve(JOURNAL_DIR), baseDir.resolve(DIARY_DIR));
             }
+            return new FileDiaryStore(baseDir.resolve(DIARY_DIR));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create diary directory", e);
         }
     }
 
-    public Service<Void> saveEntryAsync(DiaryEntry entry) {
-        return new Service<>() {
-            @Override
-            protected Task<Void> createTask() {
-                return new Task<>() {
-                    @Override
-                    protected Void call() throws Exception {
-                        updateMessage("Saving entry...");
-                        saveEntry(entry);
-                        updateMessage("Entry saved successfully");
-                        return null;
-                    }
-                };
+    private static ThreadPoolExecutor createTaskExecutor() {
+        int workers = Integer.getInteger(WORKERS_PROPERTY, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        ThreadFactory threads = Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)
+                ? Thread.ofVirtual().name("diary-task-", 1).factory()
+                : Thread.ofPlatform().name("diary-task-", 1).daemon(true).factory();
+
+        // A full queue rejects the task by cancelling it, so a burst of requests cannot pile up
+        // unbounded work; Services report that through their CANCELLED state
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(TASK_QUEUE_CAPACITY), threads, (task, pool) -> {
+                    if (task instanceof Future) ((Future<?>) task).cancel(false);
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * The bounded pool every background Service of the app runs on.
+     */
+    public Executor getTaskExecutor() {
+        return taskExecutor;
+    }
+
+    /**
+     * Number of background tasks waiting for a worker; cancelled tasks are not counted.
+     */
+    public int getQueuedTaskCount() {
+        taskExecutor.purge();
+        return taskExecutor.getQueue().size();
+    }
+
+    public int getActiveTaskCount() {
+        return taskExecutor.getActiveCount();
+    }
+
+    private void openCatalogAndIndex() {
+        boolean indexLoaded = searchIndex.load();
+
+        try {
+            // The snapshot written on close saves reading every header, but only describes the
+            // store as it was then: drop it now so a crash later cannot leave a stale one behind
+            boolean restored = indexLoaded && catalog.load(catalogSnapshot, store.stateToken());
+            Files.deleteIfExists(catalogSnapshot);
+            if (restored) {
+                store.restore(catalog.getAll().stream().map(EntryCatalog.EntryInfo::getId).toList());
+                reindexStaleEntries();
+                return;
             }
-        };
+
+            // A usable index only needs the headers; otherwise read everything once and rebuild it
+            List<DiaryEntry> entries = new ArrayList<>();
+            store.scan(!indexLoaded, entry -> {
+                catalog.put(entry);
+                if (!indexLoaded) entries.add(entry);
+            });
+            if (!indexLoaded) {
+                searchIndex.rebuild(entries);
+            } else {
+                reindexStaleEntries();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to open diary catalog: " + e.getMessage());
+        }
     }
 
-    public void saveEntry(DiaryEntry entry) throws IOException {
-        String fileName = entry.getDateOnly() + "_" + entry.getTitle().replaceAll("[^a-zA-Z0-9]", "_") + FILE_EXTENSION;
-        Path filePath = Paths.get(DIARY_DIR, fileName);
+    // Entries whose latest version never reached the index log, e.g. after a crash
+    private void reindexStaleEntries() throws IOException {
+        List<DiaryEntry> stale = new ArrayList<>();
+        for (EntryCatalog.EntryInfo info : catalog.getAll()) {
+            if (searchIndex.isCurrent(info.getId(), info.getModifiedDate())) continue;
+            DiaryEntry entry = store.load(info.getId());
+            if (entry != null) stale.add(entry);
+        }
+        Set<String> removed = searchIndex.indexedIds();
+        removed.removeIf(catalog::contains);
+
+        if (!stale.isEmpty() || !removed.isEmpty()) {
+            searchIndex.update(stale, removed);
+        }
+    }
+
+    /**
+     * Registers a listener for saved and deleted entries, from any window sharing this manager.
+     * It is called on the writer thread with each batch of changes once they are on disk, so UI
+     * listeners have to hand the batch to the FX thread themselves.
+     */
+    public void addChangeListener(Consumer<List<EntryChange>> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(Consumer<List<EntryChange>> listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void publishChanges(List<DiaryEntry> saved, List<String> deleted) {
+        List<EntryChange> changes = new ArrayList<>(saved.size() + deleted.size());
+        for (DiaryEntry entry : saved) {
+            EntryChange.Type type = publishedIds.add(entry.getId()) ? EntryChange.Type.ADDED : EntryChange.Type.UPDATED;
+            changes.add(new EntryChange(type, entry.getId(), entry));
+        }
+        for (String entryId : deleted) {
+            if (publishedIds.remove(entryId)) {
+                changes.add(new EntryChange(EntryChange.Type.DELETED, entryId, null));
+            }
+        }
+        if (changes.isEmpty()) return;
 
-        try (BufferedWriter writer = Files.newBufferedWriter(filePath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            writer.write("TITLE:" + entry.getTitle() + "\n");
-            writer.write("CREATED:" + entry.getCreatedDate().toString() + "\n");
-            writer.write("MODIFIED:" + entry.getModifiedDate().toString() + "\n");
-            writer.write("MOOD:" + (entry.getMood() != null ? entry.getMood() : "") + "\n");
-            writer.write("TAGS:" + (entry.getTags() != null ? String.join(",", entry.getTags()) : "") + "\n");
-            writer.write("CONTENT:\n");
-            writer.write(entry.getContent());
+        List<EntryChange> published = Collections.unmodifiableList(changes);
+        for (Consumer<List<EntryChange>> listener : changeListeners) {
+            listener.accept(published);
         }
     }
 
+    /**
+     * Queues the entry on the writer. The catalog is updated right away, and put back if the
+     * write fails; the future completes once the entry is on disk, and saves of the same entry
+     * made before that are coalesced.
+     */
+    public CompletableFuture<Void> saveEntryAsync(DiaryEntry entry) {
+        catalog.put(entry);
+        return writer.save(entry)
+                .whenComplete((saved, e) -> {
+                    if (e != null) revertCatalog(entry.getId());
+                })
+                .thenApply(saved -> null);
+    }
+
+    // After a failed write the catalog describes the entry as the store, or a write still
+    // queued for it, has it again
+    private void revertCatalog(String entryId) {
+        try {
+            DiaryEntry stored = loadLazily(entryId);
+            if (stored != null) {
+                catalog.put(stored);
+            } else {
+                catalog.remove(entryId);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to reload entry after a failed write: " + entryId);
+            catalog.remove(entryId);
+        }
+    }
+
+    public void saveEntry(DiaryEntry entry) throws IOException {
+        await(saveEntryAsync(entry));
+    }
+
     public Service<List<DiaryEntry>> loadAllEntriesAsync() {
         return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
             @Override
             protected Task<List<DiaryEntry>> createTask() {
                 return new Task<>() {
@@ -79,65 +244,181 @@ public class DiaryManager {
         };
     }
 
-    public List<DiaryEntry> loadAllEntries() throws IOException {
-        List<DiaryEntry> entries = new ArrayList<>();
+    /**
+     * Streams entries to the UI while they are parsed. Each batch is delivered on the FX thread,
+     * newest entries first as far as parse completion allows; the service value is the total count.
+     * Only headers are read, and each body is loaded on its first getContent().
+     */
+    public Service<Integer> streamAllEntriesAsync(Consumer<List<DiaryEntry>> onBatch) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
+            @Override
+            protected Task<Integer> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected Integer call() throws Exception {
+                        updateMessage("Loading entries...");
+                        List<DiaryEntry> batch = new ArrayList<>();
+                        long[] lastFlush = { System.nanoTime() };
+
+                        int count = streamAllEntries(false, entry -> {
+                            batch.add(entry);
+                            if (batch.size() >= STREAM_BATCH_SIZE || System.nanoTime() - lastFlush[0] >= STREAM_BATCH_NANOS) {
+                                publish(batch);
+                                lastFlush[0] = System.nanoTime();
+                            }
+                        });
+                        publish(batch);
+
+                        updateMessage("Loaded " + count + " entries");
+                        return count;
+                    }
+
+                    private void publish(List<DiaryEntry> batch) {
+                        if (batch.isEmpty()) return;
+                        List<DiaryEntry> copy = new ArrayList<>(batch);
+                        batch.clear();
+                        Platform.runLater(() -> onBatch.accept(copy));
+                    }
+                };
+            }
+        };
+    }
 
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(DIARY_DIR), "*" + FILE_EXTENSION)) {
-            for (Path file : stream) {
+    /**
+     * Parses all entry files on the load pool and hands each entry to the consumer on the
+     * calling thread as soon as it is ready. Files are submitted newest first so the first
+     * entries to arrive are the ones a browser shows at the top. Without {@code withContent}
+     * reading stops at each header and bodies are loaded lazily. Returns the number delivered.
+     */
+    public int streamAllEntries(boolean withContent, Consumer<DiaryEntry> consumer) throws IOException {
+        List<EntryCatalog.EntryInfo> infos = catalog.page(null, null, Integer.MAX_VALUE);
+
+        CompletionService<DiaryEntry> completion = new ExecutorCompletionService<>(LOAD_POOL);
+        List<Future<DiaryEntry>> pending = new ArrayList<>(infos.size());
+        for (EntryCatalog.EntryInfo info : infos) {
+            pending.add(completion.submit(() -> withContent ? loadEntry(info.getId()) : loadLazily(info.getId())));
+        }
+
+        int delivered = 0;
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                Future<DiaryEntry> done = completion.take();
                 try {
-                    DiaryEntry entry = loadEntry(file);
-                    entries.add(entry);
-                } catch (IOException e) {
-                    System.err.println("Failed to load entry: " + file.getFileName());
+                    DiaryEntry entry = done.get();
+                    if (entry == null) continue; // deleted while loading
+                    consumer.accept(entry);
+                    delivered++;
+                } catch (ExecutionException e) {
+                    System.err.println("Failed to load entry: " + e.getCause().getMessage());
                 }
             }
+        } catch (InterruptedException e) {
+            pending.forEach(f -> f.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading entries was interrupted");
+        }
+
+        return delivered;
+    }
+
+    /**
+     * One page of entries, newest first by modified date, read off the catalog's date order
+     * without touching the rest of the diary. Pass null for the first page and the previous
+     * page's next cursor after that; a cursor stays valid when entries are saved or deleted in
+     * between. Only headers are read, and each body is loaded on its first getContent().
+     */
+    public EntryPage loadEntriesPage(String cursor, int limit) throws IOException {
+        LocalDateTime afterModified = null;
+        String afterId = null;
+        if (cursor != null) {
+            // "<modified date>|<entry id>" of the last entry on the previous page
+            int separator = cursor.indexOf('|');
+            if (separator < 0) throw new IllegalArgumentException("Invalid page cursor: " + cursor);
+            afterModified = LocalDateTime.parse(cursor.substring(0, separator));
+            afterId = cursor.substring(separator + 1);
+        }
+
+        // One extra entry tells whether another page follows
+        List<EntryCatalog.EntryInfo> infos = catalog.page(afterModified, afterId, limit + 1);
+        boolean more = infos.size() > limit;
+        if (more) infos = infos.subList(0, limit);
+
+        List<DiaryEntry> entries = new ArrayList<>(infos.size());
+        for (EntryCatalog.EntryInfo info : infos) {
+            DiaryEntry entry = loadLazily(info.getId());
+            if (entry != null) entries.add(entry); // deleted meanwhile
         }
 
+        EntryCatalog.EntryInfo last = infos.isEmpty() ? null : infos.get(infos.size() - 1);
+        String nextCursor = more ? last.getModifiedDate() + "|" + last.getId() : null;
+        return new EntryPage(entries, nextCursor, catalog.size());
+    }
+
+    public Service<EntryPage> loadEntriesPageAsync(String cursor, int limit) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
+            @Override
+            protected Task<EntryPage> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected EntryPage call() throws Exception {
+                        updateMessage("Loading entries...");
+                        return loadEntriesPage(cursor, limit);
+                    }
+                };
+            }
+        };
+    }
+
+    public List<DiaryEntry> loadAllEntries() throws IOException {
+        List<DiaryEntry> entries = new ArrayList<>(catalog.size());
+        streamAllEntries(true, entries::add);
+
         // Sort by modified date (newest first)
         entries.sort((e1, e2) -> e2.getModifiedDate().compareTo(e1.getModifiedDate()));
 
         return entries;
     }
 
-    private DiaryEntry loadEntry(Path filePath) throws IOException {
-        DiaryEntry entry = new DiaryEntry();
-
-        try (BufferedReader reader = Files.newBufferedReader(filePath)) {
-            String line;
-            StringBuilder content = new StringBuilder();
-            boolean inContent = false;
-
-            while ((line = reader.readLine()) != null) {
-                if (!inContent) {
-                    if (line.startsWith("TITLE:")) {
-                        entry.setTitle(line.substring(6));
-                    } else if (line.startsWith("CREATED:")) {
-                        entry.setCreatedDate(LocalDateTime.parse(line.substring(8)));
-                    } else if (line.startsWith("MODIFIED:")) {
-                        entry.setModifiedDate(LocalDateTime.parse(line.substring(9)));
-                    } else if (line.startsWith("MOOD:")) {
-                        entry.setMood(line.substring(5));
-                    } else if (line.startsWith("TAGS:")) {
-                        String tagsStr = line.substring(5);
-                        if (!tagsStr.isEmpty()) {
-                            entry.setTags(tagsStr.split(","));
-                        }
-                    } else if (line.equals("CONTENT:")) {
-                        inContent = true;
-                    }
-                } else {
-                    if (content.length() > 0) content.append("\n");
-                    content.append(line);
-                }
-            }
-            entry.setContent(content.toString());
-        }
+    public DiaryEntry loadEntry(String entryId) throws IOException {
+        DiaryEntry pending = writer.pendingEntry(entryId);
+        if (pending != null) return pending;
+
+        DiaryEntry entry = store.load(entryId);
+        if (entry != null) catalog.getTagDictionary().intern(entry.getTags());
+        return entry;
+    }
+
+    private DiaryEntry loadLazily(String entryId) throws IOException {
+        // A save still waiting for the writer is newer than what the store holds
+        DiaryEntry pending = writer.pendingEntry(entryId);
+        if (pending != null) return pending;
 
+        DiaryEntry entry = store.load(entryId, false);
+        if (entry != null) {
+            // Entries that stay in a list share one string per tag instead of holding their own
+            catalog.getTagDictionary().intern(entry.getTags());
+            entry.setContentLoader(() -> {
+                DiaryEntry full = loadEntry(entryId);
+                return full != null ? full.getContent() : "";
+            });
+        }
         return entry;
     }
 
     public Service<Boolean> deleteEntryAsync(String entryId) {
         return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
             @Override
             protected Task<Boolean> createTask() {
                 return new Task<>() {
@@ -154,59 +435,397 @@ public class DiaryManager {
     }
 
     public boolean deleteEntry(String entryId) throws IOException {
-        List<DiaryEntry> entries = loadAllEntries();
-        Optional<DiaryEntry> toDelete = entries.stream()
-                .filter(e -> e.getId().equals(entryId))
-                .findFirst();
+        if (catalog.remove(entryId) == null) return false;
+
+        // Goes through the writer so it cannot be overtaken by a queued save of the same entry
+        await(writer.delete(entryId).whenComplete((deleted, e) -> {
+            if (e != null) revertCatalog(entryId);
+        }));
+        return true;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the diary writer");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public List<DiaryEntry> searchEntries(String query, String moodFilter, Date dateFilter) {
+        LocalDate day = dateFilter == null ? null :
+                // Not toInstant(): java.sql.Date does not support it
+                Instant.ofEpochMilli(dateFilter.getTime()).atZone(ZoneId.systemDefault()).toLocalDate();
+        return searchEntries(query, moodFilter, null, day, day);
+    }
+
+    /**
+     * Entries matching the query and every given filter, newest first. The query may use the
+     * operators, phrases and scopes of {@link EntryQuery}. {@code from} and {@code to} bound the
+     * day the entry was last modified, both inclusive, and either may be null; the tag matches
+     * ignoring case. Filters are answered by the catalog's indexes and the text query by the
+     * search index, so only the matching entries are read from disk, and only their headers.
+     *
+     * @throws IllegalArgumentException when the query is malformed
+     */
+    public List<DiaryEntry> searchEntries(String query, String moodFilter, String tagFilter,
+                                          LocalDate from, LocalDate to) {
+        BitSet matches = EntryQuery.parse(query).evaluate(catalog, searchIndex, filterSlots(moodFilter, tagFilter, from, to));
+        return loadSlots(matches);
+    }
 
-        if (toDelete.isPresent()) {
-            String fileName = toDelete.get().getDateOnly() + "_" +
-                    toDelete.get().getTitle().replaceAll("[^a-zA-Z0-9]", "_") + FILE_EXTENSION;
-            Path filePath = Paths.get(DIARY_DIR, fileName);
+    /**
+     * The {@code limit} entries most relevant to the query's words among those matching the
+     * filters, best first. Title matches count more than body matches and words found in few
+     * entries more than common ones. Each hit carries a passage of the entry around the words;
+     * only the returned entries are read from disk. Without words the newest matching entries
+     * are returned, with their previews as snippets.
+     *
+     * The query may use the syntax of {@link EntryQuery}; its words outside NOTs rank the
+     * entries matching it, and matches without any of those words follow, newest first.
+     *
+     * @throws IllegalArgumentException when the query is malformed
+     */
+    public List<SearchHit> searchRanked(String query, String moodFilter, String tagFilter,
+                                        LocalDate from, LocalDate to, int limit) {
+        EntryQuery parsed = EntryQuery.parse(query);
+        BitSet filters = filterSlots(moodFilter, tagFilter, from, to);
+        BitSet filter = parsed.isEmpty() ? filters : parsed.evaluate(catalog, searchIndex, filters);
+        List<String> words = parsed.words();
+        if (words.isEmpty()) return newestHits(filter, limit, Set.of());
 
-            if (Files.exists(filePath)) {
-                Files.delete(filePath);
-                return true;
+        Map<String, Double> ranked = searchIndex.rank(String.join(" ", words), limit,
+                filter == null ? null : entryId -> accepts(filter, entryId));
+        List<SearchHit> hits = rankedHits(ranked, new HashSet<>(words));
+        if (filter != null && hits.size() < limit) {
+            hits.addAll(newestHits(filter, limit - hits.size(), ranked.keySet()));
+        }
+        return hits;
+    }
+
+    // The newest limit entries accepted by the filter and not skipped, with their previews
+    private List<SearchHit> newestHits(BitSet filter, int limit, Set<String> skip) {
+        List<SearchHit> hits = new ArrayList<>();
+        for (EntryCatalog.EntryInfo info : catalog.newestFirst()) {
+            if (hits.size() >= limit) break;
+            if (!accepts(filter, info.getId()) || skip.contains(info.getId())) continue;
+            try {
+                DiaryEntry entry = loadLazily(info.getId());
+                if (entry != null) hits.add(SearchHit.unranked(entry));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Failed to load entry: " + info.getTitle());
             }
         }
+        return hits;
+    }
+
+    public Service<List<SearchHit>> searchRankedAsync(String query, String moodFilter, String tagFilter,
+                                                      LocalDate from, LocalDate to, int limit) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
 
-        return false;
+            @Override
+            protected Task<List<SearchHit>> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected List<SearchHit> call() {
+                        updateMessage("Searching...");
+                        List<SearchHit> hits = searchRanked(query, moodFilter, tagFilter, from, to, limit);
+                        updateMessage("Found " + hits.size() + " entries");
+                        return hits;
+                    }
+                };
+            }
+        };
     }
 
-    public List<DiaryEntry> searchEntries(String query, String moodFilter, Date dateFilter) {
+    /**
+     * The newest {@code limit} entries matching the filters whose title or text matches
+     * {@code pattern}, such as one from {@link EntryQuery#pattern}. The search index cannot
+     * answer patterns, so the bodies of the entries the filters leave are read and scanned on all
+     * cores of the load pool, newest first; the scan stops as soon as the newest matches are
+     * known. Interrupting the calling thread, as cancelling the Service of
+     * {@link #searchPatternAsync} does, stops the scan with an InterruptedIOException.
+     */
+    public List<SearchHit> searchPattern(Pattern pattern, String moodFilter, String tagFilter,
+                                         LocalDate from, LocalDate to, int limit) throws IOException {
+        BitSet filter = filterSlots(moodFilter, tagFilter, from, to);
+        List<EntryCatalog.EntryInfo> candidates = new ArrayList<>();
+        for (EntryCatalog.EntryInfo info : catalog.newestFirst()) {
+            if (accepts(filter, info.getId())) candidates.add(info);
+        }
+
+        return new ParallelScan<EntryCatalog.EntryInfo, SearchHit>(candidates, info -> {
+            try {
+                DiaryEntry entry = loadEntry(info.getId());
+                if (entry == null) return null; // deleted meanwhile
+                String text = HtmlTextExtractor.toPlainText(entry.getContent(), Integer.MAX_VALUE);
+                boolean matches = pattern.matcher(entry.getTitle() == null ? "" : entry.getTitle()).find()
+                        || pattern.matcher(text).find();
+                return matches ? SearchHit.matching(entry, text, pattern) : null;
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Failed to load entry: " + info.getTitle());
+                return null;
+            }
+        }, limit).run(LOAD_POOL);
+    }
+
+    public Service<List<SearchHit>> searchPatternAsync(Pattern pattern, String moodFilter, String tagFilter,
+                                                       LocalDate from, LocalDate to, int limit) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
+            @Override
+            protected Task<List<SearchHit>> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected List<SearchHit> call() throws IOException {
+                        updateMessage("Searching...");
+                        List<SearchHit> hits = searchPattern(pattern, moodFilter, tagFilter, from, to, limit);
+                        updateMessage("Found " + hits.size() + " entries");
+                        return hits;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Like {@link #searchRanked}, but each word of the query also finds the words one or two
+     * typos away from it (fewer for short words), so "vaccation" finds "vacation"; the word
+     * as typed ranks higher than its look-alikes. With {@code foldAccents} accents do not
+     * count as typos either.
+     */
+    public List<SearchHit> searchFuzzy(String query, String moodFilter, String tagFilter,
+                                       LocalDate from, LocalDate to, int limit, boolean foldAccents) {
+        Map<String, Set<String>> wordTerms = searchIndex.similarTerms(query, MAX_TYPOS, foldAccents);
+        if (wordTerms.isEmpty()) return searchRanked(query, moodFilter, tagFilter, from, to, limit);
+
+        BitSet filter = filterSlots(moodFilter, tagFilter, from, to);
+        Map<String, Double> ranked = searchIndex.rank(wordTerms, limit,
+                filter == null ? null : entryId -> accepts(filter, entryId));
+        Set<String> terms = new HashSet<>();
+        wordTerms.values().forEach(terms::addAll);
+        return rankedHits(ranked, terms);
+    }
+
+    public Service<List<SearchHit>> searchFuzzyAsync(String query, String moodFilter, String tagFilter,
+                                                     LocalDate from, LocalDate to, int limit, boolean foldAccents) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
+            @Override
+            protected Task<List<SearchHit>> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected List<SearchHit> call() {
+                        updateMessage("Searching...");
+                        List<SearchHit> hits = searchFuzzy(query, moodFilter, tagFilter, from, to, limit, foldAccents);
+                        updateMessage("Found " + hits.size() + " entries");
+                        return hits;
+                    }
+                };
+            }
+        };
+    }
+
+    // Loads the ranked entries, with snippets around the given terms
+    private List<SearchHit> rankedHits(Map<String, Double> ranked, Set<String> terms) {
+        List<SearchHit> hits = new ArrayList<>(ranked.size());
+        for (Map.Entry<String, Double> e : ranked.entrySet()) {
+            try {
+                DiaryEntry entry = loadLazily(e.getKey());
+                if (entry != null) hits.add(SearchHit.of(entry, e.getValue(), terms));
+            } catch (IOException | UncheckedIOException ex) {
+                System.err.println("Failed to load entry: " + e.getKey());
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * The newest {@code limit} entries matching the filters and the query as typed so far: every
+     * word of the query must be a word of the entry, except that the last one only has to start
+     * one while it is still being typed. Nothing but the returned entries' headers is read
+     * from disk, and when the query extends the previous one of the same {@code state} only the
+     * previous matches are checked again.
+     */
+    public List<SearchHit> searchAsYouType(LiveSearch state, String query, String moodFilter,
+                                           LocalDate from, LocalDate to, int limit) {
+        String text = query == null ? "" : query.stripLeading().toLowerCase(Locale.ROOT);
+        BitSet filter = filterSlots(moodFilter, null, from, to);
+        List<String> newest;
+        synchronized (state) {
+            long generation = searchIndex.generation();
+            Set<String> within = state.query != null && text.startsWith(state.query)
+                    && state.generation == generation ? state.matches : null;
+
+            if (within == null && searchIndex.estimatePrefixMatches(text) * 4L >= catalog.size()) {
+                // Most entries may match (a first letter or a common word): the newest matches
+                // turn up after a few checks, while collecting all of them would take long
+                Iterator<String> newestIds = StreamSupport.stream(catalog.newestFirst().spliterator(), false)
+                        .map(EntryCatalog.EntryInfo::getId)
+                        .filter(entryId -> accepts(filter, entryId))
+                        .iterator();
+                newest = searchIndex.firstPrefixMatches(text, newestIds, limit);
+                state.query = null;
+                state.matches = null;
+            } else {
+                Set<String> matches = searchIndex.searchPrefix(text, within);
+                state.query = text;
+                state.generation = generation;
+                state.matches = matches;
+                newest = newestOf(matches, filter, limit);
+            }
+        }
+
+        List<SearchHit> hits = new ArrayList<>(newest.size());
+        for (String entryId : newest) {
+            try {
+                DiaryEntry entry = loadLazily(entryId);
+                if (entry != null) hits.add(SearchHit.unranked(entry));
+            } catch (IOException | UncheckedIOException e) {
+                System.err.println("Failed to load entry: " + entryId);
+            }
+        }
+        return hits;
+    }
+
+    // Ids of the newest limit entries of matches accepted by the filter, newest first
+    private List<String> newestOf(Set<String> matches, BitSet filter, int limit) {
+        PriorityQueue<EntryCatalog.EntryInfo> best =
+                new PriorityQueue<>(limit + 1, EntryCatalog.NEWEST_FIRST.reversed());
+        for (String entryId : matches) {
+            EntryCatalog.EntryInfo info = catalog.get(entryId);
+            if (info == null || !accepts(filter, entryId)) continue;
+            best.add(info);
+            if (best.size() > limit) best.poll();
+        }
+        List<EntryCatalog.EntryInfo> sorted = new ArrayList<>(best);
+        sorted.sort(EntryCatalog.NEWEST_FIRST);
+        List<String> ids = new ArrayList<>(sorted.size());
+        for (EntryCatalog.EntryInfo info : sorted) ids.add(info.getId());
+        return ids;
+    }
+
+    public Service<List<SearchHit>> searchAsYouTypeAsync(LiveSearch state, String query, String moodFilter,
+                                                         LocalDate from, LocalDate to, int limit) {
+        return new Service<>() {
+            {
+                setExecutor(taskExecutor);
+            }
+
+            @Override
+            protected Task<List<SearchHit>> createTask() {
+                return new Task<>() {
+                    @Override
+                    protected List<SearchHit> call() {
+                        return searchAsYouType(state, query, moodFilter, from, to, limit);
+                    }
+                };
+            }
+        };
+    }
+
+    private boolean accepts(BitSet filter, String entryId) {
+        if (filter == null) return true;
+        int slot = catalog.slotOf(entryId);
+        return slot >= 0 && filter.get(slot);
+    }
+
+    // Null when no filter is set
+    private BitSet filterSlots(String moodFilter, String tagFilter, LocalDate from, LocalDate to) {
+        BitSet matches = null;
+        if (moodFilter != null && !moodFilter.isEmpty()) {
+            matches = intersect(matches, catalog.moodSlots(moodFilter));
+        }
+        if (tagFilter != null && !tagFilter.isBlank()) {
+            matches = intersect(matches, catalog.tagSlots(tagFilter));
+        }
+        if (from != null || to != null) {
+            matches = intersect(matches, catalog.modifiedSlots(from, to));
+        }
+        return matches;
+    }
+
+    /**
+     * Number of entries per tag, most used first.
+     */
+    public Map<String, Integer> getTagCounts() {
+        return catalog.tagCounts();
+    }
+
+    /**
+     * Entries created on a day from {@code from} to {@code to}, both inclusive, newest first.
+     */
+    public List<DiaryEntry> findEntriesCreatedBetween(LocalDate from, LocalDate to) {
+        return loadSlots(catalog.createdSlots(from, to));
+    }
+
+    private static BitSet intersect(BitSet matches, BitSet filter) {
+        if (matches == null) return filter;
+        matches.and(filter);
+        return matches;
+    }
+
+    private List<DiaryEntry> loadSlots(BitSet slots) {
+        List<DiaryEntry> results = new ArrayList<>(slots.cardinality());
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            EntryCatalog.EntryInfo info = catalog.atSlot(slot);
+            if (info == null) continue; // deleted meanwhile
+            try {
+                DiaryEntry entry = loadLazily(info.getId());
+                if (entry != null) results.add(entry);
+            } catch (IOException e) {
+                System.err.println("Failed to load entry: " + info.getTitle());
+            }
+        }
+
+        results.sort((e1, e2) -> e2.getModifiedDate().compareTo(e1.getModifiedDate()));
+        return results;
+    }
+
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        taskExecutor.shutdownNow();
+        writer.close();
+        searchIndex.flush();
+
+        String stateToken = store.stateToken();
+        if (stateToken != null) {
+            try {
+                catalog.save(catalogSnapshot, stateToken);
+            } catch (IOException e) {
+                System.err.println("Failed to save diary catalog: " + e.getMessage());
+            }
+        }
+        store.close();
+
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Already shutting down; this is the hook itself
+        }
+    }
+
+    private void closeQuietly() {
         try {
-            List<DiaryEntry> allEntries = loadAllEntries();
-
-            return allEntries.stream()
-                    .filter(entry -> {
-                        boolean matches = true;
-
-                        // Text search
-                        if (query != null && !query.isEmpty()) {
-                            matches = entry.getTitle().toLowerCase().contains(query.toLowerCase()) ||
-                                    entry.getContent().toLowerCase().contains(query.toLowerCase());
-                        }
-
-                        // Mood filter
-                        if (matches && moodFilter != null && !moodFilter.isEmpty()) {
-                            matches = moodFilter.equals(entry.getMood());
-                        }
-
-                        // Date filter
-                        if (matches && dateFilter != null) {
-                            java.time.LocalDate entryDate = entry.getModifiedDate().toLocalDate();
-                            java.time.LocalDate filterDate = dateFilter.toInstant()
-                                    .atZone(java.time.ZoneId.systemDefault())
-                                    .toLocalDate();
-                            matches = entryDate.equals(filterDate);
-                        }
-
-                        return matches;
-                    })
-                    .collect(Collectors.toList());
+            close();
         } catch (IOException e) {
-            System.err.println("Search failed: " + e.getMessage());
-            return new ArrayList<>();
+            System.err.println("Failed to close diary: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
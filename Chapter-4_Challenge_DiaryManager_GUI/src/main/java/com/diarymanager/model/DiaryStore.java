@@ -0,0 +1,67 @@
+package com.diarymanager.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend behind DiaryManager. Implementations keep their own id -> location mapping;
+ * metadata, ordering and search live in DiaryManager's catalog and index.
+ */
+public interface DiaryStore extends Closeable {
+
+    void save(DiaryEntry entry) throws IOException;
+
+    /**
+     * Saves an entry whose body is {@code delta} applied to the body this store last saved for
+     * it. Stores with a per-entry change log append only the delta and fold the log back into a
+     * full copy from time to time; the default simply saves the whole entry.
+     */
+    default void saveDelta(DiaryEntry entry, ContentDelta delta) throws IOException {
+        save(entry);
+    }
+
+    /**
+     * Returns the stored entry, or null when no entry has that id. Without {@code withContent}
+     * only the header is read and the entry's content is left unset.
+     */
+    DiaryEntry load(String entryId, boolean withContent) throws IOException;
+
+    default DiaryEntry load(String entryId) throws IOException {
+        return load(entryId, true);
+    }
+
+    boolean delete(String entryId) throws IOException;
+
+    /**
+     * Hands every live entry to the consumer once, with or without its body. Used to fill the
+     * catalog and to rebuild indexes when the store is opened.
+     */
+    void scan(boolean withContent, Consumer<DiaryEntry> consumer) throws IOException;
+
+    int size();
+
+    /**
+     * A token that changes whenever the stored entries change, including changes made to the
+     * store's files while the diary was closed, or null when the store cannot tell. DiaryManager
+     * keeps a snapshot of its catalog under this token and skips the startup scan while the
+     * token still matches.
+     */
+    default String stateToken() throws IOException {
+        return null;
+    }
+
+    /**
+     * Opens the store from a catalog snapshot instead of a scan: {@code entryIds} are the
+     * entries it held when {@link #stateToken()} returned the token it returns now.
+     */
+    default void restore(Collection<String> entryIds) {
+    }
+
+    /**
+     * Forces every save and delete made so far to stable storage. Called once per batch of
+     * writes rather than once per entry.
+     */
+    void sync() throws IOException;
+}
@@ -0,0 +1,355 @@
+package com.diarymanager.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Resident catalog of every stored entry's header metadata, keyed by entry id. It is filled
+ * once from the store at startup and then kept in step with each save and delete, so listing,
+ * filtering and lookups never require rescanning the diary.
+ *
+ * The catalog also keeps its entries ordered newest first by modified date, so a page of the
+ * browser list is read off that order without sorting, and it can be saved as a snapshot that
+ * replaces the header scan on the next start.
+ *
+ * For filtered searches every entry gets a small integer slot, and there is a bitmap of slots per
+ * mood and per tag plus a second ordering by created date. Filters are resolved to slot bitmaps
+ * that the caller intersects; no entry has to be read to apply them. Tags are kept as ids from
+ * the catalog's TagDictionary.
+ */
+public class EntryCatalog {
+    private static final int MAGIC = 0x44434154; // "DCAT"
+    private static final int VERSION = 1;
+    // Newest first; ties broken by id so every entry has exactly one position
+    static final Comparator<EntryInfo> NEWEST_FIRST =
+            Comparator.comparing(EntryInfo::getModifiedDate, Comparator.reverseOrder())
+                    .thenComparing(EntryInfo::getId);
+    private static final Comparator<EntryInfo> NEWEST_CREATED_FIRST =
+            Comparator.comparing(EntryInfo::getCreatedDate, Comparator.nullsLast(Comparator.reverseOrder()))
+                    .thenComparing(EntryInfo::getId);
+
+    private final Map<String, EntryInfo> entries = new ConcurrentHashMap<>();
+    private final NavigableSet<EntryInfo> byModified = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+
+    // Guarded by this
+    private final NavigableSet<EntryInfo> byCreated = new TreeSet<>(NEWEST_CREATED_FIRST);
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final List<EntryInfo> bySlot = new ArrayList<>();
+    private final BitSet freeSlots = new BitSet();
+    private final Map<String, BitSet> moods = new HashMap<>();
+    // Indexed by tag id; null for tags no entry has any more
+    private final List<BitSet> tagSlots = new ArrayList<>();
+    private final TagDictionary tagDictionary = new TagDictionary();
+
+    public static class EntryInfo {
+        private final String id;
+        private final String title;
+        private final LocalDateTime createdDate;
+        private final LocalDateTime modifiedDate;
+        private final String mood;
+        private final int[] tagIds;
+
+        private EntryInfo(String id, String title, LocalDateTime createdDate, LocalDateTime modifiedDate,
+                          String mood, int[] tagIds) {
+            this.id = id;
+            this.title = title;
+            this.createdDate = createdDate;
+            this.modifiedDate = modifiedDate;
+            this.mood = mood;
+            this.tagIds = tagIds;
+        }
+
+        public String getId() { return id; }
+        public String getTitle() { return title; }
+        public LocalDateTime getCreatedDate() { return createdDate; }
+        public LocalDateTime getModifiedDate() { return modifiedDate; }
+        public String getMood() { return mood; }
+        // Sorted ids in the catalog's TagDictionary
+        public int[] getTagIds() { return tagIds; }
+    }
+
+    public EntryInfo get(String entryId) {
+        return entries.get(entryId);
+    }
+
+    public boolean contains(String entryId) {
+        return entries.containsKey(entryId);
+    }
+
+    public TagDictionary getTagDictionary() {
+        return tagDictionary;
+    }
+
+    public synchronized EntryInfo put(DiaryEntry entry) {
+        EntryInfo info = new EntryInfo(entry.getId(), entry.getTitle(), entry.getCreatedDate(),
+                entry.getModifiedDate(), entry.getMood(), tagDictionary.idsOf(entry.getTags()));
+        EntryInfo previous = entries.put(info.getId(), info);
+        if (previous != null) unindex(previous);
+        index(info);
+        return previous;
+    }
+
+    public synchronized EntryInfo remove(String entryId) {
+        EntryInfo previous = entries.remove(entryId);
+        if (previous != null) {
+            unindex(previous);
+            freeSlots.set(slots.remove(entryId));
+        }
+        return previous;
+    }
+
+    private void index(EntryInfo info) {
+        byModified.add(info);
+        byCreated.add(info);
+
+        Integer slot = slots.get(info.getId());
+        if (slot == null) {
+            slot = freeSlots.isEmpty() ? bySlot.size() : freeSlots.nextSetBit(0);
+            freeSlots.clear(slot);
+            if (slot == bySlot.size()) bySlot.add(null);
+            slots.put(info.getId(), slot);
+        }
+        bySlot.set(slot, info);
+
+        if (info.getMood() != null && !info.getMood().isEmpty()) {
+            moods.computeIfAbsent(info.getMood(), k -> new BitSet()).set(slot);
+        }
+        for (int tagId : info.getTagIds()) {
+            while (tagSlots.size() <= tagId) tagSlots.add(null);
+            BitSet bits = tagSlots.get(tagId);
+            if (bits == null) tagSlots.set(tagId, bits = new BitSet());
+            bits.set(slot);
+        }
+    }
+
+    // Keeps the entry's slot, which put() reuses and remove() frees
+    private void unindex(EntryInfo info) {
+        byModified.remove(info);
+        byCreated.remove(info);
+
+        int slot = slots.get(info.getId());
+        bySlot.set(slot, null);
+        BitSet moodBits = info.getMood() != null ? moods.get(info.getMood()) : null;
+        if (moodBits != null) {
+            moodBits.clear(slot);
+            if (moodBits.isEmpty()) moods.remove(info.getMood());
+        }
+        for (int tagId : info.getTagIds()) {
+            BitSet bits = tagSlots.get(tagId);
+            bits.clear(slot);
+            if (bits.isEmpty()) tagSlots.set(tagId, null);
+        }
+    }
+
+    public Collection<EntryInfo> getAll() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Up to {@code limit} entries, newest first, that sort after the entry position given by
+     * {@code afterModified} and {@code afterId}, or starting with the newest entry when
+     * {@code afterModified} is null.
+     */
+    public List<EntryInfo> page(LocalDateTime afterModified, String afterId, int limit) {
+        Iterable<EntryInfo> from = afterModified == null ? byModified
+                : byModified.tailSet(new EntryInfo(afterId, null, null, afterModified, null, null), false);
+        List<EntryInfo> page = new ArrayList<>(Math.min(limit, entries.size()));
+        for (EntryInfo info : from) {
+            if (page.size() >= limit) break;
+            page.add(info);
+        }
+        return page;
+    }
+
+    /** Live view of all entries, newest first by modified date. */
+    public Iterable<EntryInfo> newestFirst() {
+        return Collections.unmodifiableSet(byModified);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /** Slots of every entry in the catalog. */
+    public synchronized BitSet allSlots() {
+        BitSet all = new BitSet(bySlot.size());
+        all.set(0, bySlot.size());
+        all.andNot(freeSlots);
+        return all;
+    }
+
+    /** Slots of the entries with exactly this mood. */
+    public synchronized BitSet moodSlots(String mood) {
+        BitSet bits = moods.get(mood);
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    /** Slots of the entries whose mood contains {@code name} ignoring case, so "happy" finds "😊 Happy". */
+    public synchronized BitSet moodSlotsContaining(String name) {
+        CaseInsensitiveMatcher matcher = new CaseInsensitiveMatcher(name.trim());
+        BitSet slots = new BitSet();
+        for (Map.Entry<String, BitSet> e : moods.entrySet()) {
+            if (matcher.foundIn(e.getKey())) slots.or(e.getValue());
+        }
+        return slots;
+    }
+
+    /** Slots of the entries carrying this tag; tags match ignoring case and surrounding spaces. */
+    public synchronized BitSet tagSlots(String tag) {
+        int tagId = tagDictionary.find(tag);
+        BitSet bits = tagId >= 0 && tagId < tagSlots.size() ? tagSlots.get(tagId) : null;
+        return bits != null ? (BitSet) bits.clone() : new BitSet();
+    }
+
+    /**
+     * Number of entries per tag, most used first, for tag clouds and tag pickers.
+     */
+    public synchronized Map<String, Integer> tagCounts() {
+        List<Integer> used = new ArrayList<>();
+        for (int tagId = 0; tagId < tagSlots.size(); tagId++) {
+            if (tagSlots.get(tagId) != null) used.add(tagId);
+        }
+        used.sort(Comparator.comparingInt((Integer tagId) -> tagSlots.get(tagId).cardinality()).reversed());
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (int tagId : used) {
+            counts.put(tagDictionary.nameOf(tagId), tagSlots.get(tagId).cardinality());
+        }
+        return counts;
+    }
+
+    /** Names of an entry's tags. */
+    public String[] tagsOf(EntryInfo info) {
+        return tagDictionary.namesOf(info.getTagIds());
+    }
+
+    /**
+     * Slots of the entries last modified on a day from {@code from} to {@code to}, both
+     * inclusive; a null bound leaves that side open.
+     */
+    public synchronized BitSet modifiedSlots(LocalDate from, LocalDate to) {
+        return slotsBetween(byModified, EntryInfo::getModifiedDate, from, to);
+    }
+
+    /** Like {@link #modifiedSlots}, by the day each entry was created. */
+    public synchronized BitSet createdSlots(LocalDate from, LocalDate to) {
+        return slotsBetween(byCreated, EntryInfo::getCreatedDate, from, to);
+    }
+
+    // Walks a newest-first ordering from the end of the range back to its start
+    private BitSet slotsBetween(NavigableSet<EntryInfo> order, java.util.function.Function<EntryInfo, LocalDateTime> date,
+                                LocalDate from, LocalDate to) {
+        LocalDateTime start = from != null ? from.atStartOfDay() : null;
+        Iterable<EntryInfo> candidates = order;
+        if (to != null) {
+            // Sorts right before every entry of the last day, whatever its id
+            LocalDateTime end = to.plusDays(1).atStartOfDay().minusNanos(1);
+            candidates = order.tailSet(new EntryInfo("", null, end, end, null, null), true);
+        }
+
+        BitSet bits = new BitSet();
+        for (EntryInfo info : candidates) {
+            LocalDateTime value = date.apply(info);
+            if (value == null || (start != null && value.isBefore(start))) break;
+            bits.set(slots.get(info.getId()));
+        }
+        return bits;
+    }
+
+    /** The entry in a slot, or null when the slot is free. */
+    public synchronized EntryInfo atSlot(int slot) {
+        return slot < bySlot.size() ? bySlot.get(slot) : null;
+    }
+
+    /** The slot of an entry, or -1 when it is not in the catalog. */
+    public synchronized int slotOf(String entryId) {
+        Integer slot = slots.get(entryId);
+        return slot != null ? slot : -1;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byModified.clear();
+        byCreated.clear();
+        slots.clear();
+        bySlot.clear();
+        freeSlots.clear();
+        moods.clear();
+        tagSlots.clear();
+    }
+
+    /**
+     * Writes the catalog to {@code file}, in date order, tagged with the store's state token.
+     */
+    public synchronized void save(Path file, String stateToken) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(stateToken);
+            out.writeInt(byModified.size());
+            for (EntryInfo info : byModified) {
+                out.writeUTF(info.getId());
+                writeNullable(out, info.getTitle());
+                writeNullable(out, info.getCreatedDate() != null ? info.getCreatedDate().toString() : null);
+                out.writeUTF(info.getModifiedDate().toString());
+                writeNullable(out, info.getMood());
+                String[] tags = tagsOf(info);
+                out.writeInt(tags.length);
+                for (String tag : tags) out.writeUTF(tag);
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Replaces the catalog with the snapshot in {@code file} if it was saved under
+     * {@code stateToken}. Returns false, leaving the catalog empty, when there is no such
+     * snapshot and the store has to be scanned.
+     */
+    public synchronized boolean load(Path file, String stateToken) {
+        clear();
+        if (stateToken == null || !Files.exists(file)) return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(stateToken)) {
+                return false;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                String title = readNullable(in);
+                String created = readNullable(in);
+                LocalDateTime modified = LocalDateTime.parse(in.readUTF());
+                String mood = readNullable(in);
+                String[] tags = new String[in.readInt()];
+                for (int t = 0; t < tags.length; t++) tags[t] = in.readUTF();
+
+                EntryInfo info = new EntryInfo(id, title, created != null ? LocalDateTime.parse(created) : null,
+                        modified, mood, tagDictionary.idsOf(tags));
+                entries.put(id, info);
+                index(info);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable catalog snapshot: " + e.getMessage());
+            clear();
+            return false;
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
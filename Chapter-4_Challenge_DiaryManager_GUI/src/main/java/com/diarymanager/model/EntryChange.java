@@ -0,0 +1,23 @@
+package com.diarymanager.model;
+
+/**
+ * One entry's change as published by DiaryManager once it is on disk.
+ */
+public class EntryChange {
+    public enum Type { ADDED, UPDATED, DELETED }
+
+    private final Type type;
+    private final String entryId;
+    private final DiaryEntry entry;
+
+    EntryChange(Type type, String entryId, DiaryEntry entry) {
+        this.type = type;
+        this.entryId = entryId;
+        this.entry = entry;
+    }
+
+    public Type getType() { return type; }
+    public String getEntryId() { return entryId; }
+    // The saved state of the entry; null for DELETED
+    public DiaryEntry getEntry() { return entry; }
+}
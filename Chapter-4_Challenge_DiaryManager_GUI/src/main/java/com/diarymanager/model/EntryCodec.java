@@ -0,0 +1,261 @@
+package com.diarymanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Reads and writes the .diary text format (ID/TITLE/CREATED/MODIFIED/MOOD/TAGS/PREVIEW/BODY header
+ * lines, then CONTENT: and the HTML body). BODY: holds the body's length and hash, so change logs
+ * can be checked against it without reading the body. Shared by every DiaryStore so all backends agree on it.
+ * A change-log record uses the same header followed by a DELTA: line instead of the body.
+ */
+final class EntryCodec {
+    private static final byte[] ID = ascii("ID:");
+    private static final byte[] TITLE = ascii("TITLE:");
+    private static final byte[] CREATED = ascii("CREATED:");
+    private static final byte[] MODIFIED = ascii("MODIFIED:");
+    private static final byte[] MOOD = ascii("MOOD:");
+    private static final byte[] TAGS = ascii("TAGS:");
+    private static final byte[] PREVIEW = ascii("PREVIEW:");
+    private static final byte[] CONTENT = ascii("CONTENT:");
+    private static final byte[] DELTA = ascii("DELTA:");
+    private static final byte[] BODY = ascii("BODY:");
+
+    private EntryCodec() {
+    }
+
+    static void write(DiaryEntry entry, Writer writer) throws IOException {
+        writeHeader(entry, writer);
+        writer.write("CONTENT:\n");
+        writer.write(entry.getContent() != null ? entry.getContent() : "");
+    }
+
+    private static void writeHeader(DiaryEntry entry, Writer writer) throws IOException {
+        writer.write("ID:" + entry.getId() + "\n");
+        writer.write("TITLE:" + entry.getTitle() + "\n");
+        writer.write("CREATED:" + entry.getCreatedDate().toString() + "\n");
+        writer.write("MODIFIED:" + entry.getModifiedDate().toString() + "\n");
+        writer.write("MOOD:" + (entry.getMood() != null ? entry.getMood() : "") + "\n");
+        writer.write("TAGS:" + (entry.getTags() != null ? String.join(",", entry.getTags()) : "") + "\n");
+        // Whitespace is collapsed in the preview, so it always fits on one header line
+        writer.write("PREVIEW:" + entry.getPreviewText() + "\n");
+        String content = entry.getContent() != null ? entry.getContent() : "";
+        writer.write("BODY:" + content.length() + "," + content.hashCode() + "\n");
+    }
+
+    static String encode(DiaryEntry entry) {
+        StringWriter writer = new StringWriter();
+        try {
+            write(entry, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter never throws
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Encodes a change-log record: the entry's current header, then the delta that turns the
+     * previously stored body into the entry's current one.
+     */
+    static String encodeDelta(DiaryEntry entry, ContentDelta delta) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeHeader(entry, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter never throws
+        }
+        writer.write("DELTA:" + delta.getBaseLength() + "," + delta.getBaseHash() + ","
+                + delta.getPrefixLength() + "," + delta.getSuffixLength() + "\n");
+        writer.write(delta.getInserted());
+        return writer.toString();
+    }
+
+    /**
+     * Parses the delta of a change-log record; its header is read with {@link #read}.
+     */
+    static ContentDelta readDelta(ByteBuffer buffer) throws IOException {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit) {
+            int lineEnd = indexOf(buffer, (byte) '\n', position, limit);
+            if (startsWith(buffer, position, lineEnd, DELTA)) {
+                String[] fields = decode(buffer, position + DELTA.length, lineEnd).split(",");
+                if (fields.length != 4) break;
+                return new ContentDelta(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]),
+                        Integer.parseInt(fields[2]), Integer.parseInt(fields[3]),
+                        decode(buffer, Math.min(lineEnd + 1, limit), limit));
+            }
+            position = lineEnd + 1;
+        }
+        throw new IOException("Change-log record without a delta");
+    }
+
+    /**
+     * Replays change-log records over a stored entry. The header comes from the newest record;
+     * with {@code withContent} the deltas are applied in order to the base body. A record that
+     * does not match the body it follows ends the replay, since everything after it was
+     * computed against a version that is not there (e.g. a log left over from before a crash
+     * rewrote the full entry). Without content the records are checked against the
+     * {@link #bodyStamp} of the version each follows, starting with {@code baseStamp}; entries
+     * stored before bodies were stamped have to be read with their content.
+     */
+    static DiaryEntry applyChangeLog(DiaryEntry base, int[] baseStamp, List<ByteBuffer> records,
+                                     boolean withContent) throws IOException {
+        if (records.isEmpty()) return base;
+
+        int applied = records.size();
+        StringBuilder content = null;
+        if (!withContent) {
+            if (baseStamp == null) throw new IllegalArgumentException("Unstamped base needs its content");
+            int[] stamp = baseStamp;
+            for (int i = 0; i < records.size(); i++) {
+                ContentDelta delta = readDelta(records.get(i));
+                // A record without a stamp still gives the length its delta produces
+                boolean matches = delta.getBaseLength() == stamp[0] && (stamp.length < 2 || delta.getBaseHash() == stamp[1]);
+                if (!matches) {
+                    System.err.println("Ignoring stale change log of entry " + base.getId());
+                    applied = i;
+                    break;
+                }
+                int[] next = bodyStamp(records.get(i));
+                stamp = next != null ? next
+                        : new int[] { delta.getPrefixLength() + delta.getSuffixLength() + delta.getInserted().length() };
+            }
+            if (applied == 0) return base;
+        } else {
+            content = new StringBuilder(base.getContent());
+            for (int i = 0; i < records.size(); i++) {
+                ContentDelta delta = readDelta(records.get(i));
+                // Hashing once is enough: each later delta was computed against the result of the previous one
+                boolean matches = i == 0 ? delta.appliesTo(base.getContent()) : delta.getBaseLength() == content.length();
+                if (!matches) {
+                    System.err.println("Ignoring stale change log of entry " + base.getId());
+                    applied = i;
+                    break;
+                }
+                delta.applyTo(content);
+            }
+            if (applied == 0) return base;
+        }
+
+        DiaryEntry entry = read(records.get(applied - 1), base.getId(), false);
+        if (content != null) {
+            String preview = entry.getPreviewText();
+            LocalDateTime modified = entry.getModifiedDate();
+            entry.setContent(content.toString());
+            entry.setPreviewText(preview);
+            entry.setModifiedDate(modified);
+        }
+        return entry;
+    }
+
+    /**
+     * Parses one entry straight from encoded bytes, typically a memory-mapped file or journal
+     * record. Header lines are matched on the raw bytes and only their values are decoded; the
+     * body is decoded in a single pass, and only when {@code withContent} is set; otherwise the
+     * entry's content stays null so it can be loaded lazily. The buffer's
+     * position and limit are left untouched, so a shared mapping can be read concurrently.
+     */
+    static DiaryEntry read(ByteBuffer buffer, String fallbackId, boolean withContent) {
+        DiaryEntry entry = new DiaryEntry();
+        entry.setId(fallbackId);
+        LocalDateTime modified = null;
+        String content = withContent ? "" : null;
+        String preview = null;
+
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit) {
+            int lineEnd = indexOf(buffer, (byte) '\n', position, limit);
+            int valueEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+
+            if (startsWith(buffer, position, valueEnd, ID)) {
+                entry.setId(decode(buffer, position + ID.length, valueEnd));
+            } else if (startsWith(buffer, position, valueEnd, TITLE)) {
+                entry.setTitle(decode(buffer, position + TITLE.length, valueEnd));
+            } else if (startsWith(buffer, position, valueEnd, CREATED)) {
+                entry.setCreatedDate(LocalDateTime.parse(decode(buffer, position + CREATED.length, valueEnd)));
+            } else if (startsWith(buffer, position, valueEnd, MODIFIED)) {
+                modified = LocalDateTime.parse(decode(buffer, position + MODIFIED.length, valueEnd));
+            } else if (startsWith(buffer, position, valueEnd, MOOD)) {
+                entry.setMood(decode(buffer, position + MOOD.length, valueEnd));
+            } else if (startsWith(buffer, position, valueEnd, TAGS)) {
+                String tagsStr = decode(buffer, position + TAGS.length, valueEnd);
+                if (!tagsStr.isEmpty()) {
+                    entry.setTags(tagsStr.split(","));
+                }
+            } else if (startsWith(buffer, position, valueEnd, PREVIEW)) {
+                preview = decode(buffer, position + PREVIEW.length, valueEnd);
+            } else if (startsWith(buffer, position, valueEnd, DELTA)) {
+                break; // change-log record: the header is all there is
+            } else if (valueEnd - position == CONTENT.length && startsWith(buffer, position, valueEnd, CONTENT)) {
+                if (withContent) {
+                    content = decode(buffer, Math.min(lineEnd + 1, limit), limit);
+                }
+                break;
+            }
+            position = lineEnd + 1;
+        }
+        if (content != null) {
+            entry.setContent(content);
+        }
+        // After setContent, which clears the cached preview
+        if (preview != null) {
+            entry.setPreviewText(preview);
+        }
+
+        // setTitle/setContent stamp the current time, so restore the persisted date last
+        if (modified != null) {
+            entry.setModifiedDate(modified);
+        }
+        return entry;
+    }
+
+    /**
+     * The body length and hash from the BODY: line of an entry or change-log record, or null for
+     * records written before that line existed.
+     */
+    static int[] bodyStamp(ByteBuffer buffer) {
+        int position = buffer.position();
+        int limit = buffer.limit();
+        while (position < limit) {
+            int lineEnd = indexOf(buffer, (byte) '\n', position, limit);
+            int valueEnd = lineEnd > position && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+            if (startsWith(buffer, position, valueEnd, BODY)) {
+                String[] fields = decode(buffer, position + BODY.length, valueEnd).split(",");
+                if (fields.length != 2) return null;
+                return new int[] { Integer.parseInt(fields[0]), Integer.parseInt(fields[1]) };
+            }
+            if (startsWith(buffer, position, valueEnd, CONTENT) || startsWith(buffer, position, valueEnd, DELTA)) break;
+            position = lineEnd + 1;
+        }
+        return null;
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == value) return i;
+        }
+        return limit;
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int from, int limit, byte[] prefix) {
+        if (limit - from < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(from + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static String decode(ByteBuffer buffer, int from, int to) {
+        if (from >= to) return "";
+        return StandardCharsets.UTF_8.decode(buffer.slice(from, to - from)).toString();
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,25 @@
+package com.diarymanager.model;
+
+import java.util.List;
+
+/**
+ * One page of entries, newest first, as returned by DiaryManager's paged query.
+ */
+public class EntryPage {
+    private final List<DiaryEntry> entries;
+    private final String nextCursor;
+    private final int totalCount;
+
+    EntryPage(List<DiaryEntry> entries, String nextCursor, int totalCount) {
+        this.entries = entries;
+        this.nextCursor = nextCursor;
+        this.totalCount = totalCount;
+    }
+
+    public List<DiaryEntry> getEntries() { return entries; }
+    // Cursor of the following page; null when this is the last one
+    public String getNextCursor() { return nextCursor; }
+    public boolean hasMore() { return nextCursor != null; }
+    // Entries in the whole diary when the page was read
+    public int getTotalCount() { return totalCount; }
+}
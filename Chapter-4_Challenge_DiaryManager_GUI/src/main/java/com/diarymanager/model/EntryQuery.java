@@ -0,0 +1,510 @@
+package com.diarymanager.model;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A parsed search query. Plain words must all occur in an entry's title or text, as in
+ * {@link SearchIndex#search}, and a query can also use
+ * <ul>
+ *   <li>{@code "quoted phrases"}</li>
+ *   <li>{@code AND}, {@code OR}, {@code NOT} and parentheses; terms next to each other are
+ *       ANDed, and AND binds tighter than OR</li>
+ *   <li>{@code title:}, {@code tag:} and {@code mood:} scopes, each taking a word or a quoted
+ *       phrase; a title and a mood match when they contain it, a tag when it is the tag</li>
+ *   <li>{@code date:} with a year, month or day, or a range of them such as
+ *       {@code date:2024-01..2024-03}, on the day the entry was last modified; either end of a
+ *       range may be left out</li>
+ * </ul>
+ *
+ * A query evaluates to the catalog slots of the matching entries. Within an AND the cheapest
+ * predicates run first: the catalog's date, mood and tag bitmaps, then the search index, then
+ * the title scans. Each later predicate only looks at the slots still in play, and evaluation
+ * stops once none are left.
+ */
+public final class EntryQuery {
+    // Evaluation costs, cheapest first
+    private static final int COST_BITMAP = 1;
+    private static final int COST_WORD = 2;
+    private static final int COST_PHRASE = 3;
+    private static final int COST_SCAN = 4;
+
+    private static final EntryQuery EMPTY = new EntryQuery(null);
+
+    private final Node root;
+
+    private EntryQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a query; null or blank gives the empty query, which matches everything.
+     *
+     * @throws IllegalArgumentException with a message for the user when the query is malformed
+     */
+    public static EntryQuery parse(String query) {
+        if (query == null || query.isBlank()) return EMPTY;
+        Parser parser = new Parser(lex(query));
+        Node root = parser.parseOr();
+        if (parser.position < parser.tokens.size()) {
+            throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position).text);
+        }
+        return new EntryQuery(root);
+    }
+
+    /**
+     * The pattern of a query written as {@code /regex/}, matching ignoring case, or null for
+     * any other query. Such queries are not parsed; see {@link DiaryManager#searchPattern}.
+     *
+     * @throws IllegalArgumentException when the regex is malformed
+     */
+    public static Pattern pattern(String query) {
+        if (query == null) return null;
+        String text = query.strip();
+        if (text.length() < 3 || text.charAt(0) != '/' || text.charAt(text.length() - 1) != '/') return null;
+        try {
+            return Pattern.compile(text.substring(1, text.length() - 1), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid pattern: " + e.getDescription());
+        }
+    }
+
+    /**
+     * True when the query uses anything beyond plain words: operators, parentheses, quotes or
+     * scopes. Malformed queries count as using syntax.
+     */
+    public static boolean usesSyntax(String query) {
+        if (query == null) return false;
+        try {
+            for (Token token : lex(query)) {
+                if (token.type != TokenType.TERM || token.scope != null) return true;
+            }
+            return query.indexOf('"') >= 0;
+        } catch (IllegalArgumentException e) {
+            return true;
+        }
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Slots of the matching entries among {@code candidates}, or among all entries when it is
+     * null. The candidates are not modified.
+     */
+    BitSet evaluate(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+        if (root == null) return candidates != null ? (BitSet) candidates.clone() : catalog.allSlots();
+        return root.match(catalog, index, candidates);
+    }
+
+    /**
+     * The words the query looks for in entry texts and titles, for ranking the matches and
+     * highlighting them; words under a NOT are left out.
+     */
+    List<String> words() {
+        List<String> words = new ArrayList<>();
+        if (root != null) root.collectWords(words);
+        return words;
+    }
+
+    private abstract static class Node {
+        abstract int cost();
+
+        /** Matching slots among candidates (all entries if null), as a new set. */
+        abstract BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates);
+
+        void collectWords(List<String> words) {
+        }
+    }
+
+    private static final class And extends Node {
+        final List<Node> children;
+
+        And(List<Node> children) {
+            this.children = new ArrayList<>(children);
+            this.children.sort(Comparator.comparingInt(Node::cost));
+        }
+
+        @Override
+        int cost() {
+            return children.get(0).cost();
+        }
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            BitSet matches = candidates;
+            for (Node child : children) {
+                matches = child.match(catalog, index, matches);
+                if (matches.isEmpty()) break;
+            }
+            return matches;
+        }
+
+        @Override
+        void collectWords(List<String> words) {
+            for (Node child : children) child.collectWords(words);
+        }
+    }
+
+    private static final class Or extends Node {
+        final List<Node> children;
+
+        Or(List<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        int cost() {
+            int cost = 0;
+            for (Node child : children) cost = Math.max(cost, child.cost());
+            return cost;
+        }
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            BitSet matches = new BitSet();
+            for (Node child : children) matches.or(child.match(catalog, index, candidates));
+            return matches;
+        }
+
+        @Override
+        void collectWords(List<String> words) {
+            for (Node child : children) child.collectWords(words);
+        }
+    }
+
+    private static final class Not extends Node {
+        final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        int cost() {
+            return child.cost();
+        }
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            BitSet matches = candidates != null ? (BitSet) candidates.clone() : catalog.allSlots();
+            matches.andNot(child.match(catalog, index, candidates));
+            return matches;
+        }
+    }
+
+    // Bitmap lookups in the catalog: date, mood and tag
+    private abstract static class BitmapNode extends Node {
+        @Override
+        int cost() {
+            return COST_BITMAP;
+        }
+
+        abstract BitSet slots(EntryCatalog catalog);
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            BitSet matches = slots(catalog);
+            if (candidates != null) matches.and(candidates);
+            return matches;
+        }
+    }
+
+    private static final class DateRange extends BitmapNode {
+        final LocalDate from;
+        final LocalDate to;
+
+        DateRange(LocalDate from, LocalDate to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        BitSet slots(EntryCatalog catalog) {
+            return catalog.modifiedSlots(from, to);
+        }
+    }
+
+    private static final class Mood extends BitmapNode {
+        final String mood;
+
+        Mood(String mood) {
+            this.mood = mood;
+        }
+
+        @Override
+        BitSet slots(EntryCatalog catalog) {
+            return catalog.moodSlotsContaining(mood);
+        }
+    }
+
+    private static final class Tag extends BitmapNode {
+        final String tag;
+
+        Tag(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        BitSet slots(EntryCatalog catalog) {
+            return catalog.tagSlots(tag);
+        }
+    }
+
+    // A word or phrase of the title or text, looked up in the search index
+    private static final class Text extends Node {
+        final String text;
+        final int words;
+
+        Text(String text) {
+            this.text = text;
+            this.words = SearchIndex.tokenize(text).size();
+        }
+
+        @Override
+        int cost() {
+            return words > 1 ? COST_PHRASE : COST_WORD;
+        }
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            Set<String> entryIds = index.search(text);
+            BitSet matches = new BitSet();
+            if (candidates != null && candidates.cardinality() < entryIds.size()) {
+                for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                    EntryCatalog.EntryInfo info = catalog.atSlot(slot);
+                    if (info != null && entryIds.contains(info.getId())) matches.set(slot);
+                }
+            } else {
+                for (String entryId : entryIds) {
+                    int slot = catalog.slotOf(entryId);
+                    if (slot >= 0 && (candidates == null || candidates.get(slot))) matches.set(slot);
+                }
+            }
+            return matches;
+        }
+
+        @Override
+        void collectWords(List<String> words) {
+            words.addAll(SearchIndex.tokenize(text));
+        }
+    }
+
+    // Titles are in the catalog; each candidate's title is checked in turn
+    private static final class Title extends Node {
+        final String text;
+        final CaseInsensitiveMatcher matcher;
+
+        Title(String text) {
+            this.text = text;
+            this.matcher = new CaseInsensitiveMatcher(text);
+        }
+
+        @Override
+        int cost() {
+            return COST_SCAN;
+        }
+
+        @Override
+        BitSet match(EntryCatalog catalog, SearchIndex index, BitSet candidates) {
+            BitSet scanned = candidates != null ? candidates : catalog.allSlots();
+            BitSet matches = new BitSet();
+            for (int slot = scanned.nextSetBit(0); slot >= 0; slot = scanned.nextSetBit(slot + 1)) {
+                EntryCatalog.EntryInfo info = catalog.atSlot(slot);
+                if (info != null && matcher.foundIn(info.getTitle())) matches.set(slot);
+            }
+            return matches;
+        }
+
+        @Override
+        void collectWords(List<String> words) {
+            words.addAll(SearchIndex.tokenize(text));
+        }
+    }
+
+    private enum TokenType { TERM, AND, OR, NOT, OPEN, CLOSE }
+
+    private static final class Token {
+        final TokenType type;
+        // Scope name without the colon, or null
+        final String scope;
+        final String text;
+
+        Token(TokenType type, String scope, String text) {
+            this.type = type;
+            this.scope = scope;
+            this.text = text;
+        }
+    }
+
+    private static List<Token> lex(String query) {
+        List<Token> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(new Token(c == '(' ? TokenType.OPEN : TokenType.CLOSE, null, String.valueOf(c)));
+                i++;
+            } else {
+                String scope = null;
+                int start = i;
+                while (i < query.length() && !Character.isWhitespace(query.charAt(i))
+                        && "()\"".indexOf(query.charAt(i)) < 0) {
+                    i++;
+                }
+                String word = query.substring(start, i);
+                int colon = word.indexOf(':');
+                if (colon > 0 && isScope(word.substring(0, colon))) {
+                    scope = word.substring(0, colon).toLowerCase(Locale.ROOT);
+                    word = word.substring(colon + 1);
+                }
+
+                if (i < query.length() && query.charAt(i) == '"' && word.isEmpty()) {
+                    int end = query.indexOf('"', i + 1);
+                    if (end < 0) throw new IllegalArgumentException("Missing closing quote");
+                    tokens.add(new Token(TokenType.TERM, scope, query.substring(i + 1, end)));
+                    i = end + 1;
+                } else if (word.isEmpty()) {
+                    throw new IllegalArgumentException(scope != null ? "Nothing to search for after " + scope + ":"
+                            : "Unexpected \"");
+                } else if (scope == null && word.equals("AND")) {
+                    tokens.add(new Token(TokenType.AND, null, word));
+                } else if (scope == null && word.equals("OR")) {
+                    tokens.add(new Token(TokenType.OR, null, word));
+                } else if (scope == null && word.equals("NOT")) {
+                    tokens.add(new Token(TokenType.NOT, null, word));
+                } else {
+                    tokens.add(new Token(TokenType.TERM, scope, word));
+                }
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isScope(String name) {
+        String scope = name.toLowerCase(Locale.ROOT);
+        return scope.equals("title") || scope.equals("tag") || scope.equals("mood") || scope.equals("date");
+    }
+
+    // or := and (OR and)*, and := unary (AND? unary)*, unary := NOT unary | ( or ) | term
+    private static final class Parser {
+        final List<Token> tokens;
+        int position;
+
+        Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        Node parseOr() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseAnd());
+            while (accept(TokenType.OR)) children.add(parseAnd());
+            children = withoutWordless(children);
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        }
+
+        Node parseAnd() {
+            List<Node> children = new ArrayList<>();
+            children.add(parseUnary());
+            while (position < tokens.size()) {
+                TokenType next = tokens.get(position).type;
+                if (next == TokenType.OR || next == TokenType.CLOSE) break;
+                accept(TokenType.AND);
+                children.add(parseUnary());
+            }
+            children = withoutWordless(children);
+            return children.size() == 1 ? children.get(0) : new And(children);
+        }
+
+        // Terms of punctuation alone ("rock & roll") have no words to look up and would match
+        // nothing, so they are left out next to other terms
+        private static List<Node> withoutWordless(List<Node> children) {
+            List<Node> kept = new ArrayList<>(children);
+            kept.removeIf(child -> child instanceof Text && ((Text) child).words == 0);
+            return kept.isEmpty() ? children : kept;
+        }
+
+        Node parseUnary() {
+            if (position >= tokens.size()) throw new IllegalArgumentException("Query ends too early");
+            Token token = tokens.get(position++);
+            switch (token.type) {
+                case NOT:
+                    return new Not(parseUnary());
+                case OPEN:
+                    Node inner = parseOr();
+                    if (!accept(TokenType.CLOSE)) throw new IllegalArgumentException("Missing closing parenthesis");
+                    return inner;
+                case TERM:
+                    return term(token);
+                default:
+                    throw new IllegalArgumentException("Unexpected " + token.text);
+            }
+        }
+
+        boolean accept(TokenType type) {
+            if (position < tokens.size() && tokens.get(position).type == type) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static Node term(Token token) {
+        if (token.scope == null) return new Text(token.text);
+        switch (token.scope) {
+            case "title":
+                return new Title(token.text);
+            case "tag":
+                return new Tag(token.text);
+            case "mood":
+                return new Mood(token.text);
+            default:
+                return dateRange(token.text);
+        }
+    }
+
+    private static Node dateRange(String value) {
+        int dots = value.indexOf("..");
+        if (dots < 0) return new DateRange(startOf(value), endOf(value));
+        String from = value.substring(0, dots);
+        String to = value.substring(dots + 2);
+        if (from.isEmpty() && to.isEmpty()) throw new IllegalArgumentException("Invalid date range: " + value);
+        return new DateRange(from.isEmpty() ? null : startOf(from), to.isEmpty() ? null : endOf(to));
+    }
+
+    // First and last day of a year (2024), month (2024-01) or day (2024-01-15)
+    private static LocalDate startOf(String date) {
+        try {
+            switch (date.length()) {
+                case 4:
+                    return LocalDate.of(Integer.parseInt(date), 1, 1);
+                case 7:
+                    return YearMonth.parse(date).atDay(1);
+                default:
+                    return LocalDate.parse(date);
+            }
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid date: " + date);
+        }
+    }
+
+    private static LocalDate endOf(String date) {
+        LocalDate start = startOf(date);
+        switch (date.length()) {
+            case 4:
+                return start.plusYears(1).minusDays(1);
+            case 7:
+                return start.plusMonths(1).minusDays(1);
+            default:
+                return start;
+        }
+    }
+}
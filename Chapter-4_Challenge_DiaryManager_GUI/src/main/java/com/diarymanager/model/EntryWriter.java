@@ -0,0 +1,260 @@
+package com.diarymanager.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single long-lived writer thread in front of a DiaryStore (group commit). Saves and deletes are
+ * queued per entry id; a newer request for an id that is still queued replaces the older one if
+ * both are saves or both are deletes, and otherwise waits behind it.
+ * The writer drains the queue in batches, writes each batch, syncs the store once and only then
+ * completes the batch's futures and updates the search index, so a completed future means the
+ * change is on stable storage. Changes to one id are always written in submission order.
+ *
+ * The writer remembers the body it last wrote for recently saved entries. When such an entry
+ * is long and only a small part of it changed, as with an autosave while typing, the store
+ * gets just the delta against that body.
+ */
+class EntryWriter implements Closeable {
+    private static final int MAX_BATCH = 256;
+    // Shorter bodies are cheap enough to rewrite in full
+    private static final int DELTA_MIN_LENGTH = 16 * 1024;
+    private static final int REMEMBERED_BODIES = 16;
+
+    private final DiaryStore store;
+    private final SearchIndex searchIndex;
+    private final CommitListener listener;
+    private final Thread thread;
+
+    // Guarded by this; queued is drained in insertion order
+    private LinkedHashMap<String, Write> queued = new LinkedHashMap<>();
+    private Map<String, Write> inFlight = Collections.emptyMap();
+    private boolean closed;
+
+    // entry id -> body as last written; only touched by the writer thread
+    private final Map<String, String> writtenBodies = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > REMEMBERED_BODIES;
+        }
+    };
+
+    private static class Write {
+        final String entryId;
+        DiaryEntry entry; // null for a delete
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        // The next request for the same id, of the other kind; queued once this one is taken
+        Write next;
+
+        Write(String entryId, DiaryEntry entry) {
+            this.entryId = entryId;
+            this.entry = entry;
+        }
+    }
+
+    /** Called on the writer thread with each batch once it is durable and indexed. */
+    interface CommitListener {
+        void committed(List<DiaryEntry> saved, List<String> deleted);
+    }
+
+    EntryWriter(DiaryStore store, SearchIndex searchIndex, CommitListener listener) {
+        this.store = store;
+        this.searchIndex = searchIndex;
+        this.listener = listener;
+
+        thread = new Thread(this::run, "diary-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues the entry for saving. The future completes with true once the entry is durable.
+     */
+    CompletableFuture<Boolean> save(DiaryEntry entry) {
+        return submit(entry.getId(), entry);
+    }
+
+    /**
+     * Queues a delete. The future completes with the store's result once the delete is durable.
+     */
+    CompletableFuture<Boolean> delete(String entryId) {
+        return submit(entryId, null);
+    }
+
+    private synchronized CompletableFuture<Boolean> submit(String entryId, DiaryEntry entry) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IOException("Diary writer is closed"));
+        }
+
+        Write write = queued.get(entryId);
+        if (write != null) {
+            while (write.next != null) write = write.next;
+            if ((write.entry == null) == (entry == null)) {
+                // Coalesce: the queued request has not been written yet, so only the newest state matters
+                write.entry = entry;
+                return write.future;
+            }
+            // A save and a delete each need their own result
+            write.next = new Write(entryId, entry);
+            return write.next.future;
+        }
+
+        write = new Write(entryId, entry);
+        queued.put(entryId, write);
+        notifyAll();
+        return write.future;
+    }
+
+    /**
+     * Returns the newest saved state of an entry that is queued or being written, or null when the
+     * store is up to date for that id (or its latest request is a delete).
+     */
+    synchronized DiaryEntry pendingEntry(String entryId) {
+        Write write = queued.get(entryId);
+        if (write == null) write = inFlight.get(entryId);
+        while (write != null && write.next != null) write = write.next;
+        return write != null ? write.entry : null;
+    }
+
+    private void run() {
+        while (true) {
+            List<Write> batch;
+            synchronized (this) {
+                while (queued.isEmpty() && !closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (queued.isEmpty()) {
+                    notifyAll(); // closed and drained
+                    return;
+                }
+                batch = takeBatch();
+            }
+
+            writeBatch(batch);
+
+            synchronized (this) {
+                inFlight = Collections.emptyMap();
+                notifyAll();
+            }
+        }
+    }
+
+    private List<Write> takeBatch() {
+        List<Write> batch = new ArrayList<>(Math.min(queued.size(), MAX_BATCH));
+        Map<String, Write> taken = new HashMap<>();
+        List<Write> followers = new ArrayList<>();
+        Iterator<Write> it = queued.values().iterator();
+        while (it.hasNext() && batch.size() < MAX_BATCH) {
+            Write write = it.next();
+            it.remove();
+            batch.add(write);
+            taken.put(write.entryId, write);
+            if (write.next != null) followers.add(write.next);
+        }
+        // Written with a later batch, after the request they follow
+        for (Write follower : followers) {
+            queued.put(follower.entryId, follower);
+        }
+        inFlight = taken;
+        return batch;
+    }
+
+    private void writeBatch(List<Write> batch) {
+        Map<Write, Boolean> results = new LinkedHashMap<>();
+        Set<Write> deltas = new HashSet<>();
+        for (Write write : batch) {
+            try {
+                if (write.entry != null) {
+                    if (saveOrSaveDelta(write.entry)) deltas.add(write);
+                    results.put(write, true);
+                } else {
+                    writtenBodies.remove(write.entryId);
+                    results.put(write, store.delete(write.entryId));
+                }
+            } catch (IOException | RuntimeException e) {
+                writtenBodies.remove(write.entryId); // the stored body is unknown now
+                write.future.completeExceptionally(e);
+            }
+        }
+
+        try {
+            store.sync();
+        } catch (IOException | RuntimeException e) {
+            results.keySet().forEach(write -> write.future.completeExceptionally(e));
+            return;
+        }
+
+        List<DiaryEntry> saved = new ArrayList<>();
+        List<DiaryEntry> savedAsDelta = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Write write : results.keySet()) {
+            if (write.entry == null) deleted.add(write.entryId);
+            else if (deltas.contains(write)) savedAsDelta.add(write.entry);
+            else saved.add(write.entry);
+        }
+        try {
+            // The entries are already durable; an index record that is missing or stale is
+            // detected and redone when the diary is next opened. A small edit to a long entry
+            // should not rewrite its whole index record either, so that waits for a full save.
+            searchIndex.updateDeferred(savedAsDelta);
+            if (!saved.isEmpty() || !deleted.isEmpty()) {
+                searchIndex.update(saved, deleted);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to update search index: " + e.getMessage());
+        }
+
+        List<DiaryEntry> allSaved = new ArrayList<>(saved);
+        allSaved.addAll(savedAsDelta);
+        try {
+            listener.committed(allSaved, deleted);
+        } catch (RuntimeException e) {
+            System.err.println("Change listener failed: " + e.getMessage());
+        }
+
+        results.forEach((write, result) -> write.future.complete(result));
+    }
+
+    // Returns true when only a delta was handed to the store
+    private boolean saveOrSaveDelta(DiaryEntry entry) throws IOException {
+        String body = entry.getContent();
+        String previous = writtenBodies.get(entry.getId());
+
+        if (previous != null && body != null && body.length() >= DELTA_MIN_LENGTH) {
+            ContentDelta delta = ContentDelta.between(previous, body);
+            if (delta.size() < body.length() / 4) {
+                store.saveDelta(entry, delta);
+                writtenBodies.put(entry.getId(), body);
+                return true;
+            }
+        }
+        store.save(entry);
+        if (body != null) writtenBodies.put(entry.getId(), body);
+        return false;
+    }
+
+    /**
+     * Stops accepting requests and waits until everything already queued has been written.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            while (thread.isAlive() && (!queued.isEmpty() || !inFlight.isEmpty())) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while flushing diary writes", e);
+                }
+            }
+        }
+    }
+}
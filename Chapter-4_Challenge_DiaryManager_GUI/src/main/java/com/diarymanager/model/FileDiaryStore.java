@@ -0,0 +1,414 @@
+package com.diarymanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * One .diary file per entry, named after the entry id so that retitling or editing an entry
+ * on another day rewrites the same file. Autosave deltas go to a per-entry change log next to
+ * it (id.diary.changes, length-prefixed records) until the next full save folds them back into
+ * the .diary file. Directories from before id-based names are migrated once when opened.
+ */
+public final class FileDiaryStore implements DiaryStore {
+    static final String FILE_EXTENSION = ".diary";
+    private static final String CHANGE_LOG_EXTENSION = ".changes";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String LAYOUT_MARKER = ".id-names";
+    private static final java.util.regex.Pattern SAFE_ID = java.util.regex.Pattern.compile("[A-Za-z0-9_-]{1,100}");
+    // Below this size a plain read is cheaper than setting up a mapping
+    private static final long MAP_THRESHOLD = 64 * 1024;
+    // Header-only reads fetch this much at a time; a header is usually well within one chunk
+    private static final int HEADER_CHUNK = 4 * 1024;
+    // Header values are single lines, so the first such line is where the body starts
+    private static final byte[] BODY_MARKER = "\nCONTENT:".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path dir;
+    // entry id -> file name inside dir
+    private final Map<String, String> fileNames = new ConcurrentHashMap<>();
+    // Files written since the last sync
+    private final Set<Path> unsynced = ConcurrentHashMap.newKeySet();
+    // entry id -> records in its change log, for entries that have one and have been counted
+    private final Map<String, Integer> changeLogLengths = new ConcurrentHashMap<>();
+
+    // A .diary file and the header read from it
+    private static class StoredCopy {
+        final String fileName;
+        final DiaryEntry header;
+
+        StoredCopy(String fileName, DiaryEntry header) {
+            this.fileName = fileName;
+            this.header = header;
+        }
+    }
+
+    public FileDiaryStore(Path dir) throws IOException {
+        this(dir, true);
+    }
+
+    private FileDiaryStore(Path dir, boolean writable) throws IOException {
+        this.dir = dir;
+        if (!writable) return;
+        Files.createDirectories(dir);
+        deleteTempFiles();
+        if (!Files.exists(dir.resolve(LAYOUT_MARKER))) {
+            migrateToIdNames();
+        }
+    }
+
+    /**
+     * Opens an existing directory for scanning and loading only: no temp files are cleaned
+     * up and files keep the names they have, so nothing in it changes.
+     */
+    static FileDiaryStore openReadOnly(Path dir) throws IOException {
+        return new FileDiaryStore(dir, false);
+    }
+
+    static String fileNameFor(String entryId) {
+        if (SAFE_ID.matcher(entryId).matches()) return entryId + FILE_EXTENSION;
+        // Ids from elsewhere may not be valid file names
+        return "id-" + UUID.nameUUIDFromBytes(entryId.getBytes(StandardCharsets.UTF_8)) + FILE_EXTENSION;
+    }
+
+    @Override
+    public void save(DiaryEntry entry) throws IOException {
+        String fileName = fileNameFor(entry.getId());
+        Path filePath = dir.resolve(fileName);
+        write(filePath, entry);
+        // The full copy supersedes the change log; deleting it only after the write keeps a crash safe
+        deleteChangeLog(entry.getId(), fileName);
+
+        String previous = fileNames.put(entry.getId(), fileName);
+        if (previous != null && !previous.equals(fileName)) {
+            // Loaded from a file with another name (copied in by hand); the id-named file replaces it
+            Path stale = dir.resolve(previous);
+            Files.deleteIfExists(stale);
+            unsynced.remove(stale);
+            deleteChangeLog(entry.getId(), previous);
+        }
+    }
+
+    @Override
+    public void saveDelta(DiaryEntry entry, ContentDelta delta) throws IOException {
+        String fileName = fileNames.get(entry.getId());
+        if (fileName == null || !fileName.equals(fileNameFor(entry.getId()))) {
+            save(entry);
+            return;
+        }
+
+        Path filePath = dir.resolve(fileName);
+        Path logPath = changeLogPath(fileName);
+        byte[] record = EntryCodec.encodeDelta(entry, delta).getBytes(StandardCharsets.UTF_8);
+        int records = changeLogLengths.computeIfAbsent(entry.getId(), id -> countRecords(logPath));
+        long logBytes = Files.exists(logPath) ? Files.size(logPath) : 0;
+
+        // Fold the log into a new full copy once it is long or outweighs the full copy
+        if (records >= ContentDelta.MAX_CHAIN_LENGTH || logBytes + record.length > Files.size(filePath)) {
+            save(entry);
+            return;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        }
+        unsynced.add(logPath);
+        changeLogLengths.merge(entry.getId(), 1, Integer::sum);
+    }
+
+    @Override
+    public DiaryEntry load(String entryId, boolean withContent) throws IOException {
+        String fileName = fileNames.get(entryId);
+        return fileName != null ? readWithChangeLog(fileName, withContent) : null;
+    }
+
+    @Override
+    public boolean delete(String entryId) throws IOException {
+        String fileName = fileNames.remove(entryId);
+        if (fileName == null) return false;
+        Path filePath = dir.resolve(fileName);
+        unsynced.remove(filePath);
+        deleteChangeLog(entryId, fileName);
+        return Files.deleteIfExists(filePath);
+    }
+
+    @Override
+    public void scan(boolean withContent, Consumer<DiaryEntry> consumer) throws IOException {
+        Map<String, DiaryEntry> newest = new HashMap<>();
+        fileNames.clear();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + FILE_EXTENSION)) {
+            for (Path file : stream) {
+                try {
+                    DiaryEntry entry = readWithChangeLog(file.getFileName().toString(), withContent);
+                    // Only a file copied in by hand can duplicate an id now; keep the newest
+                    DiaryEntry existing = newest.get(entry.getId());
+                    if (existing == null || existing.getModifiedDate().isBefore(entry.getModifiedDate())) {
+                        newest.put(entry.getId(), entry);
+                        fileNames.put(entry.getId(), file.getFileName().toString());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("Failed to load entry: " + file.getFileName());
+                }
+            }
+        }
+
+        newest.values().forEach(consumer);
+    }
+
+    @Override
+    public int size() {
+        return fileNames.size();
+    }
+
+    @Override
+    public String stateToken() throws IOException {
+        for (Map.Entry<String, String> e : fileNames.entrySet()) {
+            // A file copied in by hand is only found by a scan
+            if (!e.getValue().equals(fileNameFor(e.getKey()))) return null;
+        }
+        // Every save, delete and new change log renames or creates a file in dir
+        return "files:" + Files.getLastModifiedTime(dir);
+    }
+
+    @Override
+    public void restore(Collection<String> entryIds) {
+        fileNames.clear();
+        for (String entryId : entryIds) {
+            fileNames.put(entryId, fileNameFor(entryId));
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // One file per entry, so each file written in the batch needs its own force
+        for (Iterator<Path> it = unsynced.iterator(); it.hasNext(); ) {
+            Path filePath = it.next();
+            it.remove();
+            try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            } catch (NoSuchFileException e) {
+                // Renamed or deleted since it was written
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        // Every save is written through; nothing is held open
+    }
+
+    // Writes a complete new file and moves it over the old one, so a crash never leaves a torn entry
+    private void write(Path filePath, DiaryEntry entry) throws IOException {
+        Path tmp = filePath.resolveSibling(filePath.getFileName() + TEMP_EXTENSION);
+        // Encode first: a lazily loaded body may still have to be read from the current file
+        String encoded = EntryCodec.encode(entry);
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp)) {
+            writer.write(encoded);
+        }
+        Files.move(tmp, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        unsynced.add(filePath);
+    }
+
+    private void deleteTempFiles() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + TEMP_EXTENSION)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Moves every entry to its id-based file name. Files named after date and title left several
+     * copies of an entry behind whenever it was edited on another day; of those only the newest
+     * survives, with its change log folded in. Only the headers are read to match up the copies,
+     * and a body only for the files that are rewritten. Every step writes the new file before
+     * deleting old ones, so an interrupted migration simply runs again on the next start.
+     */
+    private void migrateToIdNames() throws IOException {
+        for (List<StoredCopy> copies : copiesByEntry()) {
+            StoredCopy newest = copies.get(0);
+            String target = fileNameFor(newest.header.getId());
+            if (copies.size() == 1 && newest.fileName.equals(target)) continue;
+
+            DiaryEntry entry;
+            try {
+                entry = readWithChangeLog(newest.fileName, true);
+            } catch (IOException | RuntimeException e) {
+                continue; // Left under its old name; scan() reports it when it cannot be loaded
+            }
+            write(dir.resolve(target), entry);
+            deleteChangeLog(entry.getId(), target);
+            for (StoredCopy copy : copies) {
+                if (copy.fileName.equals(target)) continue;
+                Files.deleteIfExists(dir.resolve(copy.fileName));
+                deleteChangeLog(entry.getId(), copy.fileName);
+            }
+        }
+        sync();
+        Files.createFile(dir.resolve(LAYOUT_MARKER));
+    }
+
+    /**
+     * Passes the newest copy of every entry to the consumer, reading one file at a time; only
+     * the headers are held while the copies are matched up. Files that cannot be read are
+     * skipped and stay where they are.
+     */
+    void forEachNewest(Consumer<DiaryEntry> consumer) throws IOException {
+        for (List<StoredCopy> copies : copiesByEntry()) {
+            DiaryEntry entry;
+            try {
+                entry = readWithChangeLog(copies.get(0).fileName, true);
+            } catch (IOException | RuntimeException e) {
+                continue;
+            }
+            consumer.accept(entry);
+        }
+    }
+
+    /**
+     * Reads the header of every .diary file and groups the files by the entry they hold, newest
+     * copy first. Files from before ids were persisted have no ID line and each get an id of
+     * their own, so those copies are matched by creation time and title instead.
+     */
+    private Collection<List<StoredCopy>> copiesByEntry() throws IOException {
+        Map<String, List<StoredCopy>> copies = new HashMap<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + FILE_EXTENSION)) {
+            for (Path file : stream) {
+                String fileName = file.getFileName().toString();
+                try {
+                    DiaryEntry header = readWithChangeLog(fileName, false);
+                    String identity = header.getId().equals(fallbackIdOf(file))
+                            ? "legacy:" + header.getCreatedDate() + "\n" + header.getTitle()
+                            : header.getId();
+                    copies.computeIfAbsent(identity, k -> new ArrayList<>()).add(new StoredCopy(fileName, header));
+                } catch (IOException | RuntimeException e) {
+                    // Left under its old name; scan() reports it when it cannot be loaded
+                }
+            }
+        }
+
+        Comparator<StoredCopy> newestFirst = Comparator.comparing(copy -> copy.header.getModifiedDate());
+        for (List<StoredCopy> files : copies.values()) {
+            files.sort(newestFirst.reversed());
+        }
+        return copies.values();
+    }
+
+    private DiaryEntry readWithChangeLog(String fileName, boolean withContent) throws IOException {
+        Path filePath = dir.resolve(fileName);
+        Path logPath = changeLogPath(fileName);
+        if (!Files.exists(logPath)) return read(filePath, withContent);
+
+        ByteBuffer bytes = bytesOf(filePath, withContent);
+        int[] stamp = EntryCodec.bodyStamp(bytes);
+        if (!withContent && stamp == null) {
+            // Stored before bodies were stamped: the log can only be checked against the body
+            withContent = true;
+            bytes = bytesOf(filePath, true);
+        }
+        DiaryEntry entry = EntryCodec.read(bytes, fallbackIdOf(filePath), withContent);
+        return EntryCodec.applyChangeLog(entry, stamp, readRecords(logPath), withContent);
+    }
+
+    private Path changeLogPath(String fileName) {
+        return dir.resolve(fileName + CHANGE_LOG_EXTENSION);
+    }
+
+    private void deleteChangeLog(String entryId, String fileName) throws IOException {
+        Path logPath = changeLogPath(fileName);
+        changeLogLengths.remove(entryId);
+        unsynced.remove(logPath);
+        Files.deleteIfExists(logPath);
+    }
+
+    private static List<ByteBuffer> readRecords(Path logPath) throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(logPath));
+        List<ByteBuffer> records = new ArrayList<>();
+        while (log.remaining() >= 4) {
+            int length = log.getInt();
+            // A torn record can only be the last one; everything before it is complete
+            if (length < 0 || length > log.remaining()) break;
+            records.add(log.slice(log.position(), length));
+            log.position(log.position() + length);
+        }
+        return records;
+    }
+
+    private static int countRecords(Path logPath) {
+        try {
+            if (!Files.exists(logPath)) return 0;
+            List<ByteBuffer> records = readRecords(logPath);
+            int recordBytes = 0;
+            for (ByteBuffer record : records) recordBytes += 4 + record.remaining();
+            // Appending after a torn record would hide the new records; fold the log instead
+            return recordBytes == Files.size(logPath) ? records.size() : ContentDelta.MAX_CHAIN_LENGTH;
+        } catch (IOException e) {
+            return ContentDelta.MAX_CHAIN_LENGTH; // unreadable: make the next save a full one
+        }
+    }
+
+    static DiaryEntry read(Path filePath, boolean withContent) throws IOException {
+        return EntryCodec.read(bytesOf(filePath, withContent), fallbackIdOf(filePath), withContent);
+    }
+
+    // Entries written before ids were persisted get a stable id derived from their file name
+    private static String fallbackIdOf(Path filePath) {
+        return UUID.nameUUIDFromBytes(filePath.getFileName().toString().getBytes()).toString();
+    }
+
+    // The whole file, or without withContent just its header
+    private static ByteBuffer bytesOf(Path filePath, boolean withContent) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            if (!withContent) {
+                return readHeader(channel);
+            }
+            long size = channel.size();
+            if (size >= MAP_THRESHOLD) {
+                // The mapping stays valid after the channel is closed
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                // keep reading until the whole file is in
+            }
+            return bytes.flip();
+        }
+    }
+
+    // Reads in small chunks up to the line that starts the body, so listing entries does not read their bodies
+    private static ByteBuffer readHeader(FileChannel channel) throws IOException {
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_CHUNK);
+        int searched = 0;
+        while (true) {
+            if (!bytes.hasRemaining()) {
+                bytes = ByteBuffer.allocate(bytes.capacity() * 2).put(bytes.flip());
+            }
+            boolean end = channel.read(bytes) < 0;
+            int bodyMarker = indexOf(bytes, BODY_MARKER, searched, bytes.position());
+            if (bodyMarker >= 0 || end) {
+                bytes.flip();
+                if (bodyMarker >= 0) bytes.limit(bodyMarker + 1);
+                return bytes;
+            }
+            searched = Math.max(0, bytes.position() - BODY_MARKER.length + 1);
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte[] bytes, int from, int limit) {
+        for (int i = from; i + bytes.length <= limit; i++) {
+            int j = 0;
+            while (j < bytes.length && buffer.get(i + j) == bytes[j]) j++;
+            if (j == bytes.length) return i;
+        }
+        return -1;
+    }
+}
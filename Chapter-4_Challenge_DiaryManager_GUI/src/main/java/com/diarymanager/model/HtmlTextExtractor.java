@@ -0,0 +1,261 @@
+package com.diarymanager.model;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Single-pass HTML to plain text extraction for previews and indexing. Markup and comments are
+ * dropped, the contents of head/style/script/title are skipped, common entities are decoded,
+ * block-level tags become word breaks and whitespace runs collapse to one space. Extraction
+ * stops as soon as the requested number of visible characters has been produced, so a preview
+ * of a huge body only walks its first few hundred characters.
+ *
+ * An instance holds its scratch buffers and can be reused for many documents, but is not
+ * thread-safe.
+ */
+public class HtmlTextExtractor {
+    private static final int MAX_ENTITY_LENGTH = 10;
+    private static final Set<String> SKIPPED = Set.of("head", "style", "script", "title");
+    private static final Set<String> BLOCKS = Set.of(
+            "p", "div", "br", "li", "ul", "ol", "h1", "h2", "h3", "h4", "h5", "h6", "tr", "td", "th",
+            "table", "blockquote", "pre", "hr", "section", "article", "body");
+    private static final Map<String, Character> ENTITIES = Map.ofEntries(
+            Map.entry("amp", '&'), Map.entry("lt", '<'), Map.entry("gt", '>'),
+            Map.entry("quot", '"'), Map.entry("apos", '\''), Map.entry("nbsp", '\u00A0'),
+            Map.entry("hellip", '…'), Map.entry("mdash", '—'), Map.entry("ndash", '–'),
+            Map.entry("lsquo", '‘'), Map.entry("rsquo", '’'),
+            Map.entry("ldquo", '“'), Map.entry("rdquo", '”'), Map.entry("copy", '©'));
+
+    private enum State { TEXT, TAG_NAME, TAG_ATTRIBUTES, MARKUP_DECLARATION, COMMENT, ENTITY }
+
+    private final StringBuilder tagName = new StringBuilder(16);
+    private final StringBuilder entity = new StringBuilder(MAX_ENTITY_LENGTH);
+
+    private StringBuilder out;
+    private int limit;
+    private int produced;
+    private boolean truncated;
+    private State state;
+    private boolean closingTag;
+    private char quote;
+    private String skipUntil;
+    private boolean pendingSpace;
+    private int dashes;
+
+    /**
+     * Convenience for one-off use: the visible text of {@code html}, at most {@code maxChars} long.
+     */
+    public static String toPlainText(CharSequence html, int maxChars) {
+        if (html == null) return "";
+        StringBuilder text = new StringBuilder(Math.min(maxChars, html.length()));
+        new HtmlTextExtractor().extract(html, maxChars, text);
+        return text.toString();
+    }
+
+    /**
+     * Appends up to {@code maxChars} visible characters to {@code text}. Returns true when the
+     * document had more text than that.
+     */
+    public boolean extract(CharSequence html, int maxChars, StringBuilder text) {
+        reset(text, maxChars);
+        for (int i = 0, n = html.length(); i < n && !truncated; i++) {
+            accept(html.charAt(i));
+        }
+        finish();
+        return truncated;
+    }
+
+    public boolean extract(Reader html, int maxChars, StringBuilder text) throws IOException {
+        reset(text, maxChars);
+        char[] chunk = new char[4096];
+        int read;
+        while (!truncated && (read = html.read(chunk)) > 0) {
+            for (int i = 0; i < read && !truncated; i++) {
+                accept(chunk[i]);
+            }
+        }
+        finish();
+        return truncated;
+    }
+
+    private void reset(StringBuilder text, int maxChars) {
+        out = text;
+        limit = maxChars;
+        produced = 0;
+        truncated = false;
+        state = State.TEXT;
+        skipUntil = null;
+        pendingSpace = false;
+    }
+
+    private void finish() {
+        if (state == State.ENTITY) {
+            // A dangling '&...' at the very end is plain text
+            emit('&');
+            for (int i = 0; i < entity.length(); i++) emit(entity.charAt(i));
+        }
+        out = null;
+    }
+
+    private void accept(char c) {
+        switch (state) {
+            case TEXT:
+                if (c == '<') {
+                    state = State.TAG_NAME;
+                    tagName.setLength(0);
+                    closingTag = false;
+                } else if (c == '&') {
+                    state = State.ENTITY;
+                    entity.setLength(0);
+                } else {
+                    emit(c);
+                }
+                break;
+
+            case TAG_NAME:
+                if (skipUntil != null && !closingTag && !(c == '/' && tagName.length() == 0)) {
+                    // Inside skipped content only a closing tag matters; "x<y" in a script is not a tag
+                    state = State.TEXT;
+                    accept(c);
+                } else if (c == '/' && tagName.length() == 0 && !closingTag) {
+                    closingTag = true;
+                } else if (c == '!' && tagName.length() == 0 && !closingTag) {
+                    state = State.MARKUP_DECLARATION;
+                    dashes = 0;
+                } else if (Character.isLetterOrDigit(c)) {
+                    tagName.append(Character.toLowerCase(c));
+                } else if (tagName.length() == 0) {
+                    // "<" not followed by a tag name, e.g. "a < b": keep it as text
+                    state = State.TEXT;
+                    emit('<');
+                    if (closingTag) emit('/');
+                    accept(c);
+                } else if (c == '>') {
+                    endTag();
+                } else {
+                    state = State.TAG_ATTRIBUTES;
+                    quote = 0;
+                }
+                break;
+
+            case TAG_ATTRIBUTES:
+                if (quote != 0) {
+                    if (c == quote) quote = 0;
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    endTag();
+                }
+                break;
+
+            case MARKUP_DECLARATION:
+                // "<!--" starts a comment; anything else (<!DOCTYPE ...>) ends at '>'
+                if (c == '-' && dashes < 2) {
+                    if (++dashes == 2) {
+                        state = State.COMMENT;
+                        dashes = 0;
+                    }
+                } else if (c == '>') {
+                    state = State.TEXT;
+                } else {
+                    dashes = 2;
+                }
+                break;
+
+            case COMMENT:
+                if (c == '>' && dashes >= 2) {
+                    state = State.TEXT;
+                }
+                dashes = c == '-' ? dashes + 1 : 0;
+                break;
+
+            case ENTITY:
+                if (c == ';') {
+                    state = State.TEXT;
+                    decodeEntity();
+                } else if ((Character.isLetterOrDigit(c) || (c == '#' && entity.length() == 0))
+                        && entity.length() < MAX_ENTITY_LENGTH) {
+                    entity.append(c);
+                } else {
+                    state = State.TEXT;
+                    emit('&');
+                    for (int i = 0; i < entity.length(); i++) emit(entity.charAt(i));
+                    accept(c);
+                }
+                break;
+        }
+    }
+
+    private void endTag() {
+        state = State.TEXT;
+        String name = tagName.toString();
+
+        if (skipUntil != null) {
+            if (closingTag && name.equals(skipUntil)) skipUntil = null;
+            return;
+        }
+        if (!closingTag && SKIPPED.contains(name)) {
+            skipUntil = name;
+        } else if (BLOCKS.contains(name)) {
+            pendingSpace = produced > 0;
+        }
+    }
+
+    private void decodeEntity() {
+        if (entity.length() > 1 && entity.charAt(0) == '#') {
+            try {
+                boolean hex = entity.charAt(1) == 'x' || entity.charAt(1) == 'X';
+                int codePoint = hex
+                        ? Integer.parseInt(entity, 2, entity.length(), 16)
+                        : Integer.parseInt(entity, 1, entity.length(), 10);
+                if (Character.isValidCodePoint(codePoint)) {
+                    if (Character.isBmpCodePoint(codePoint)) {
+                        emit((char) codePoint);
+                    } else {
+                        emit(Character.highSurrogate(codePoint));
+                        emit(Character.lowSurrogate(codePoint));
+                    }
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                // fall through and keep the text as written
+            }
+        } else {
+            Character decoded = ENTITIES.get(entity.toString());
+            if (decoded != null) {
+                emit(decoded);
+                return;
+            }
+        }
+
+        emit('&');
+        for (int i = 0; i < entity.length(); i++) emit(entity.charAt(i));
+        emit(';');
+    }
+
+    private void emit(char c) {
+        if (skipUntil != null || truncated) return;
+
+        if (Character.isWhitespace(c) || c == '\u00A0') {
+            pendingSpace = produced > 0;
+            return;
+        }
+        if (pendingSpace) {
+            if (!append(' ')) return;
+            pendingSpace = false;
+        }
+        append(c);
+    }
+
+    private boolean append(char c) {
+        if (produced >= limit) {
+            truncated = true;
+            return false;
+        }
+        out.append(c);
+        produced++;
+        return true;
+    }
+}
@@ -0,0 +1,566 @@
+package com.diarymanager.model;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal backend. Entries are appended to numbered segment files as
+ * [length][crc][type][id][.diary payload] records; deletes append a tombstone and autosaves
+ * can append delta records that form a per-entry change log after the entry's full record. An
+ * in-memory offset index (id -> segment/offset chain) is rebuilt from the record headers on open,
+ * and a background task rewrites the live records into a fresh segment once superseded records
+ * outweigh live ones.
+ */
+public final class JournalDiaryStore implements DiaryStore {
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    // A compacted segment until it is complete
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String COMPACTION_TMP = SEGMENT_PREFIX + "compacted" + SEGMENT_SUFFIX + TMP_SUFFIX;
+    private static final long SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final long COMPACTION_MIN_GARBAGE = 16L * 1024 * 1024;
+    private static final String IMPORT_MARKER = "imported";
+
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final byte RECORD_DELTA = 3;
+    // length (int) + crc (long) + type (byte) + id length (short)
+    private static final int HEADER_BYTES = 4 + 8 + 1 + 2;
+
+    private final Path dir;
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    // entry id -> its full record, followed by its change-log records in order
+    private final Map<String, List<Location>> offsets = new HashMap<>();
+    // Read-only mappings of sealed segments; the active segment is still growing and is read directly
+    private final Map<Integer, MappedByteBuffer> mappedSegments = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "diary-journal-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private int activeSegment;
+    private long liveBytes;
+    private long garbageBytes;
+
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * Opens the journal in {@code dir}. Until an import has completed, the .diary files in
+     * {@code legacyDir} are imported into it; re-running an interrupted import is harmless
+     * because later records for the same id supersede earlier ones.
+     */
+    public JournalDiaryStore(Path dir, Path legacyDir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+
+        openSegments();
+        if (!Files.exists(dir.resolve(IMPORT_MARKER))) {
+            if (legacyDir != null && Files.isDirectory(legacyDir)) {
+                importLegacy(legacyDir);
+            }
+            Files.createFile(dir.resolve(IMPORT_MARKER));
+        }
+    }
+
+    private void openSegments() throws IOException {
+        // Left by a compaction that did not finish; the segments it copied are all still there
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX + TMP_SUFFIX)) {
+            for (Path file : stream) {
+                Files.delete(file);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                int number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(number, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            }
+        }
+
+        if (segments.isEmpty()) {
+            activeSegment = 1;
+            segments.put(activeSegment, openSegment(activeSegment));
+        } else {
+            activeSegment = segments.lastKey();
+        }
+
+        for (Map.Entry<Integer, FileChannel> e : segments.entrySet()) {
+            replay(e.getKey(), e.getValue(), e.getKey() == activeSegment);
+        }
+    }
+
+    private void replay(int segment, FileChannel channel, boolean verify) throws IOException {
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+
+        while (position + HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            long crc = header.getLong();
+            byte type = header.get();
+            int idLength = header.getShort();
+
+            int recordBytes = 4 + length;
+            if (length < HEADER_BYTES - 4 + idLength || position + recordBytes > size) break;
+
+            ByteBuffer idBuffer = ByteBuffer.allocate(idLength);
+            readFully(channel, idBuffer, position + HEADER_BYTES);
+            String id = new String(idBuffer.array(), StandardCharsets.UTF_8);
+
+            // Torn writes can only be at the end of the segment that was being appended to
+            if (verify && crcOf(channel, position, recordBytes) != crc) break;
+
+            track(type, id, new Location(segment, position, recordBytes));
+            position += recordBytes;
+        }
+
+        if (position < size) {
+            System.err.println("Discarding torn journal tail in segment " + segment + " at " + position);
+            channel.truncate(position);
+        }
+    }
+
+    private void importLegacy(Path legacyDir) throws IOException {
+        // Read only: the old directory stays as it was, e.g. to go back to the file store
+        FileDiaryStore legacy = FileDiaryStore.openReadOnly(legacyDir);
+        legacy.forEachNewest(entry -> {
+            try {
+                save(entry);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        segments.get(activeSegment).force(true);
+    }
+
+    @Override
+    public void save(DiaryEntry entry) throws IOException {
+        append(RECORD_PUT, entry.getId(), EntryCodec.encode(entry).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void saveDelta(DiaryEntry entry, ContentDelta delta) throws IOException {
+        byte[] payload = EntryCodec.encodeDelta(entry, delta).getBytes(StandardCharsets.UTF_8);
+
+        lock.writeLock().lock();
+        try {
+            List<Location> chain = offsets.get(entry.getId());
+            int fullBytes = chain != null ? chain.get(0).length : 0;
+            // Fold the change log into a new full record once it is long or outweighs the full record
+            if (chain == null || chain.size() > ContentDelta.MAX_CHAIN_LENGTH
+                    || bytesOf(chain) - fullBytes + payload.length > fullBytes) {
+                save(entry);
+            } else {
+                append(RECORD_DELTA, entry.getId(), payload);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public DiaryEntry load(String entryId, boolean withContent) throws IOException {
+        lock.readLock().lock();
+        try {
+            List<Location> chain = offsets.get(entryId);
+            if (chain == null) return null;
+            return decode(entryId, chain, withContent);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(String entryId) throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (!offsets.containsKey(entryId)) return false;
+            append(RECORD_DELETE, entryId, new byte[0]);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void scan(boolean withContent, Consumer<DiaryEntry> consumer) throws IOException {
+        List<String> ids;
+        lock.readLock().lock();
+        try {
+            ids = new ArrayList<>(offsets.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (String id : ids) {
+            DiaryEntry entry;
+            lock.readLock().lock();
+            try {
+                // Resolve the location per entry; saves or a compaction may have moved it meanwhile
+                List<Location> chain = offsets.get(id);
+                if (chain == null) continue;
+                entry = decode(id, chain, withContent);
+            } finally {
+                lock.readLock().unlock();
+            }
+            consumer.accept(entry);
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return offsets.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String stateToken() throws IOException {
+        // Segments are only ever appended to, added or replaced, and the offset index is
+        // rebuilt from them on open anyway
+        lock.readLock().lock();
+        try {
+            return "journal:" + segments.keySet() + ":" + segments.get(activeSegment).size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void sync() throws IOException {
+        // Sealed segments are forced when they roll, so only the active one can hold unsynced records
+        lock.readLock().lock();
+        try {
+            segments.get(activeSegment).force(false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (FileChannel channel : segments.values()) {
+                channel.force(true);
+                channel.close();
+            }
+            segments.clear();
+            mappedSegments.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void append(byte type, String entryId, byte[] payload) throws IOException {
+        byte[] id = entryId.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = encodeRecord(type, id, payload);
+
+        lock.writeLock().lock();
+        try {
+            FileChannel active = segments.get(activeSegment);
+            if (active.size() > 0 && active.size() + record.remaining() > SEGMENT_BYTES) {
+                active = rollSegment();
+            }
+            long position = active.size();
+            int recordBytes = record.remaining();
+            while (record.hasRemaining()) {
+                active.write(record, position + (recordBytes - record.remaining()));
+            }
+
+            track(type, entryId, new Location(activeSegment, position, recordBytes));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        scheduleCompactionIfNeeded();
+    }
+
+    private void track(byte type, String entryId, Location location) {
+        if (type == RECORD_DELTA) {
+            List<Location> chain = offsets.get(entryId);
+            if (chain != null) {
+                chain.add(location);
+                liveBytes += location.length;
+            } else {
+                garbageBytes += location.length; // delta of an entry deleted after it
+            }
+            return;
+        }
+
+        List<Location> previous = offsets.remove(entryId);
+        if (previous != null) {
+            long bytes = bytesOf(previous);
+            liveBytes -= bytes;
+            garbageBytes += bytes;
+        }
+        if (type == RECORD_PUT) {
+            offsets.put(entryId, new ArrayList<>(List.of(location)));
+            liveBytes += location.length;
+        } else {
+            garbageBytes += location.length;
+        }
+    }
+
+    private static long bytesOf(List<Location> chain) {
+        long bytes = 0;
+        for (Location location : chain) bytes += location.length;
+        return bytes;
+    }
+
+    private ByteBuffer encodeRecord(byte type, byte[] id, byte[] payload) {
+        int length = HEADER_BYTES - 4 + id.length + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length);
+        record.putLong(0); // crc placeholder
+        record.put(type);
+        record.putShort((short) id.length);
+        record.put(id);
+        record.put(payload);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 12, record.capacity() - 12);
+        record.putLong(4, crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private FileChannel rollSegment() throws IOException {
+        segments.get(activeSegment).force(true);
+        activeSegment++;
+        FileChannel channel = openSegment(activeSegment);
+        segments.put(activeSegment, channel);
+        return channel;
+    }
+
+    private FileChannel openSegment(int number) throws IOException {
+        return FileChannel.open(segmentPath(number),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private void scheduleCompactionIfNeeded() {
+        if (garbageBytes < COMPACTION_MIN_GARBAGE || garbageBytes < liveBytes) return;
+        if (!compactionScheduled.compareAndSet(false, true)) return;
+
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                System.err.println("Journal compaction failed: " + e.getMessage());
+            } finally {
+                compactionScheduled.set(false);
+            }
+        });
+    }
+
+    /**
+     * Copies every live record into a new segment numbered after all existing ones, which then
+     * becomes the active segment, and deletes the old segments. The records are copied without
+     * holding the lock, from a snapshot of the offset index; only the records saved or deleted
+     * meanwhile are copied under it, just before the swap. The new segment is written under a
+     * temporary name and renamed once it is complete, so a crash mid-compaction leaves either
+     * the old segments alone or a complete new segment that sorts last and supersedes them.
+     */
+    synchronized void compact() throws IOException {
+        Map<String, List<Location>> snapshot = new HashMap<>();
+        Map<Integer, FileChannel> sources;
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<String, List<Location>> e : offsets.entrySet()) {
+                snapshot.put(e.getKey(), new ArrayList<>(e.getValue()));
+            }
+            sources = new HashMap<>(segments);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        Path tmp = dir.resolve(COMPACTION_TMP);
+        FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Map<String, List<Location>> compacted = new HashMap<>(snapshot.size() * 2);
+        long[] position = { 0 };
+        boolean swapped = false;
+        try {
+            // Records are never changed once written, and only compaction closes segments
+            for (Map.Entry<String, List<Location>> e : snapshot.entrySet()) {
+                compacted.put(e.getKey(), copy(sources, e.getValue(), out, position));
+            }
+            out.force(true);
+            swapped = swapIn(snapshot, compacted, out, tmp, position);
+        } finally {
+            if (!swapped) {
+                out.close();
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    // Copies what changed since the snapshot and makes the compacted segment the only one
+    private boolean swapIn(Map<String, List<Location>> snapshot, Map<String, List<Location>> compacted,
+                           FileChannel out, Path tmp, long[] position) throws IOException {
+        lock.writeLock().lock();
+        try {
+            long live = 0;
+            for (Map.Entry<String, List<Location>> e : offsets.entrySet()) {
+                List<Location> chain = e.getValue();
+                List<Location> copied = snapshot.get(e.getKey());
+                List<Location> moved = compacted.get(e.getKey());
+                if (copied != null && copied.get(0) == chain.get(0)) {
+                    // Only change-log records appended since the snapshot are left to copy
+                    moved.addAll(copy(segments, chain.subList(copied.size(), chain.size()), out, position));
+                } else {
+                    // Saved again since the snapshot; the new copy supersedes the one copied before
+                    moved = copy(segments, chain, out, position);
+                    compacted.put(e.getKey(), moved);
+                }
+                live += bytesOf(moved);
+            }
+            for (String entryId : snapshot.keySet()) {
+                if (offsets.containsKey(entryId)) continue;
+                // Deleted since the snapshot: without a tombstone its copy would come back on open
+                ByteBuffer record = encodeRecord(RECORD_DELETE, entryId.getBytes(StandardCharsets.UTF_8), new byte[0]);
+                while (record.hasRemaining()) {
+                    position[0] += out.write(record, position[0]);
+                }
+                compacted.remove(entryId);
+            }
+            int target = activeSegment + 1;
+            out.force(true);
+            // The open channel keeps writing to the renamed file
+            Files.move(tmp, segmentPath(target), StandardCopyOption.ATOMIC_MOVE);
+
+            for (Map.Entry<Integer, FileChannel> e : segments.entrySet()) {
+                e.getValue().close();
+                Files.deleteIfExists(segmentPath(e.getKey()));
+            }
+            segments.clear();
+            mappedSegments.clear();
+            segments.put(target, out);
+            activeSegment = target;
+            for (List<Location> chain : compacted.values()) {
+                chain.replaceAll(location -> new Location(target, location.offset, location.length));
+            }
+            offsets.clear();
+            offsets.putAll(compacted);
+            liveBytes = live;
+            garbageBytes = position[0] - live;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Appends the records to out at position, and returns where they went in out
+    private static List<Location> copy(Map<Integer, FileChannel> sources, List<Location> chain,
+                                       FileChannel out, long[] position) throws IOException {
+        List<Location> copied = new ArrayList<>(chain.size());
+        for (Location location : chain) {
+            ByteBuffer record = ByteBuffer.allocate(location.length);
+            readFully(sources.get(location.segment), record, location.offset);
+            record.flip();
+            long start = position[0];
+            while (record.hasRemaining()) {
+                position[0] += out.write(record, position[0]);
+            }
+            copied.add(new Location(0, start, location.length));
+        }
+        return copied;
+    }
+
+    private ByteBuffer recordView(Location location) throws IOException {
+        if (location.segment == activeSegment) {
+            ByteBuffer record = ByteBuffer.allocate(location.length);
+            readFully(segments.get(location.segment), record, location.offset);
+            record.flip();
+            return record;
+        }
+
+        MappedByteBuffer mapped = mappedSegments.get(location.segment);
+        if (mapped == null) {
+            FileChannel channel = segments.get(location.segment);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mappedSegments.put(location.segment, mapped);
+        }
+        // Absolute slice: concurrent readers never share a position
+        return mapped.slice((int) location.offset, location.length);
+    }
+
+    private DiaryEntry decode(String entryId, List<Location> chain, boolean withContent) throws IOException {
+        ByteBuffer full = payloadOf(recordView(chain.get(0)));
+        if (chain.size() == 1) return EntryCodec.read(full, entryId, withContent);
+
+        int[] stamp = EntryCodec.bodyStamp(full);
+        // Stored before bodies were stamped: the change log can only be checked against the body
+        if (stamp == null) withContent = true;
+        DiaryEntry entry = EntryCodec.read(full, entryId, withContent);
+
+        List<ByteBuffer> changeLog = new ArrayList<>(chain.size() - 1);
+        for (Location location : chain.subList(1, chain.size())) {
+            changeLog.add(payloadOf(recordView(location)));
+        }
+        return EntryCodec.applyChangeLog(entry, stamp, changeLog, withContent);
+    }
+
+    private static ByteBuffer payloadOf(ByteBuffer record) {
+        int idLength = record.getShort(HEADER_BYTES - 2);
+        return record.slice(HEADER_BYTES + idLength, record.limit() - HEADER_BYTES - idLength);
+    }
+
+    private static long crcOf(FileChannel channel, long position, int recordBytes) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(recordBytes);
+        readFully(channel, record, position);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 12, recordBytes - 12);
+        return crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new EOFException("Unexpected end of journal segment");
+            position += read;
+        }
+    }
+}
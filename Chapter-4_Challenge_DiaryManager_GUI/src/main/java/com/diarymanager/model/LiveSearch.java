@@ -0,0 +1,21 @@
+package com.diarymanager.model;
+
+import java.util.Set;
+
+/**
+ * State of one search-as-you-type field between keystrokes: the last query and the entries its
+ * words matched. {@link DiaryManager#searchAsYouType} narrows those matches when the next query
+ * only extends the last one, as long as no entry was indexed in between.
+ */
+public class LiveSearch {
+    // Guarded by this
+    String query;
+    long generation;
+    Set<String> matches;
+
+    /** Forgets the last query, so the next search starts from the whole index. */
+    public synchronized void reset() {
+        query = null;
+        matches = null;
+    }
+}
@@ -0,0 +1,99 @@
+package com.diarymanager.model;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Checks a list of items on all workers of a fork-join pool and collects the first
+ * {@code limit} results in list order. The list is cut into chunks that workers claim in order,
+ * so the chunks near the front are done first; once the finished chunks at the front hold
+ * {@code limit} results, nothing behind them can make it into the result and the workers stop
+ * instead of checking the rest. Interrupting the calling thread stops them too.
+ */
+final class ParallelScan<I, R> {
+    private static final int CHUNK_SIZE = 64;
+
+    private final List<I> items;
+    // The item's result, or null when it does not match
+    private final Function<I, R> check;
+    private final int limit;
+    private final int chunkCount;
+    private final AtomicInteger nextChunk = new AtomicInteger();
+    // Results of each finished chunk
+    private final AtomicReferenceArray<List<R>> found;
+    // Chunks after this one are not needed any more
+    private volatile int lastNeeded = Integer.MAX_VALUE;
+    private volatile boolean stopped;
+    // Number of finished chunks at the front of the list, and their results
+    private int frontChunks;
+    private int frontResults;
+
+    ParallelScan(List<I> items, Function<I, R> check, int limit) {
+        this.items = items;
+        this.check = check;
+        this.limit = limit;
+        this.chunkCount = (items.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.found = new AtomicReferenceArray<>(chunkCount);
+    }
+
+    List<R> run(ForkJoinPool pool) throws InterruptedIOException {
+        if (limit <= 0 || chunkCount == 0) return List.of();
+
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = Math.min(pool.getParallelism(), chunkCount); i > 0; i--) {
+            workers.add(pool.submit(this::work));
+        }
+        try {
+            for (ForkJoinTask<?> worker : workers) worker.get();
+        } catch (InterruptedException e) {
+            stopped = true;
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Search was cancelled");
+        } catch (ExecutionException e) {
+            stopped = true;
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+
+        List<R> results = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCount && chunk <= lastNeeded && results.size() < limit; chunk++) {
+            List<R> chunkResults = found.get(chunk);
+            results.addAll(chunkResults.subList(0, Math.min(chunkResults.size(), limit - results.size())));
+        }
+        return results;
+    }
+
+    private void work() {
+        int chunk;
+        while (!stopped && (chunk = nextChunk.getAndIncrement()) < chunkCount && chunk <= lastNeeded) {
+            List<R> results = new ArrayList<>();
+            int end = Math.min(items.size(), (chunk + 1) * CHUNK_SIZE);
+            for (int i = chunk * CHUNK_SIZE; i < end; i++) {
+                // Later chunks are only claimed after this one, so they are not needed either
+                if (stopped || chunk > lastNeeded) return;
+                R result = check.apply(items.get(i));
+                if (result != null) results.add(result);
+            }
+            found.set(chunk, results);
+            chunkDone();
+        }
+    }
+
+    // Advances the front of finished chunks, and stops at the chunk that completes the results
+    private synchronized void chunkDone() {
+        while (frontChunks < chunkCount && frontResults < limit) {
+            List<R> results = found.get(frontChunks);
+            if (results == null) return;
+            frontResults += results.size();
+            if (frontResults >= limit) lastNeeded = frontChunks;
+            frontChunks++;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.diarymanager.model;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * One ranked search result: the entry, its relevance score and a short passage of its text
+ * around the query words, with the character ranges of those words for highlighting.
+ */
+public class SearchHit {
+    private static final int SNIPPET_LENGTH = 160;
+    // Context kept before the first word of the chosen passage
+    private static final int SNIPPET_LEAD = 40;
+    // Enough text to find a passage in; longer bodies are only searched this far
+    private static final int SNIPPET_SOURCE_LENGTH = 100_000;
+
+    private final DiaryEntry entry;
+    private final double score;
+    private final String snippet;
+    private final List<Highlight> highlights;
+
+    /** A highlighted range [start, end) of the snippet. */
+    public static final class Highlight {
+        private final int start;
+        private final int end;
+
+        Highlight(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public int getStart() { return start; }
+        public int getEnd() { return end; }
+    }
+
+    private SearchHit(DiaryEntry entry, double score, String snippet, List<Highlight> highlights) {
+        this.entry = entry;
+        this.score = score;
+        this.snippet = snippet;
+        this.highlights = highlights;
+    }
+
+    /**
+     * A hit for an entry that matched filters only; the snippet is the entry's cached preview.
+     */
+    static SearchHit unranked(DiaryEntry entry) {
+        return new SearchHit(entry, 0, entry.getPreview(SNIPPET_LENGTH), List.of());
+    }
+
+    /**
+     * Builds the hit for an entry found by words {@code terms}: the passage of its plain text
+     * where the most of them fall within one snippet length, or the start of the text when its
+     * body has none of them (a title match).
+     */
+    static SearchHit of(DiaryEntry entry, double score, Set<String> terms) {
+        String text = HtmlTextExtractor.toPlainText(entry.getContent(), SNIPPET_SOURCE_LENGTH);
+        return around(entry, score, text, SearchIndex.matchOffsets(text, terms));
+    }
+
+    /**
+     * Builds the hit for an entry whose plain {@code text} matched {@code pattern}, with the
+     * passage around the pattern's matches; the title matched when the text has none.
+     */
+    static SearchHit matching(DiaryEntry entry, String text, Pattern pattern) {
+        List<int[]> matches = new ArrayList<>();
+        Matcher matcher = pattern.matcher(text.length() > SNIPPET_SOURCE_LENGTH
+                ? text.substring(0, SNIPPET_SOURCE_LENGTH) : text);
+        while (matcher.find()) {
+            // Empty matches have nothing to highlight
+            if (matcher.end() > matcher.start()) matches.add(new int[] {matcher.start(), matcher.end()});
+        }
+        return around(entry, 0, text, matches);
+    }
+
+    // The snippet of text around the matches, each match a [start, end) range of the text
+    private static SearchHit around(DiaryEntry entry, double score, String text, List<int[]> matches) {
+        if (matches.isEmpty()) {
+            String start = text.length() > SNIPPET_LENGTH ? text.substring(0, SNIPPET_LENGTH) + "..." : text;
+            return new SearchHit(entry, score, start, List.of());
+        }
+
+        // The window starting at a match that covers the most matches
+        int best = 0;
+        int bestCount = 0;
+        for (int i = 0, j = 0; i < matches.size(); i++) {
+            while (j < matches.size() && matches.get(j)[1] <= matches.get(i)[0] + SNIPPET_LENGTH - SNIPPET_LEAD) j++;
+            if (j - i > bestCount) {
+                best = i;
+                bestCount = j - i;
+            }
+        }
+
+        int from = Math.max(0, matches.get(best)[0] - SNIPPET_LEAD);
+        // Start on a word boundary
+        while (from > 0 && from < matches.get(best)[0] && Character.isLetterOrDigit(text.charAt(from - 1))) from++;
+        int to = Math.min(text.length(), from + SNIPPET_LENGTH);
+
+        String prefix = from > 0 ? "..." : "";
+        StringBuilder snippet = new StringBuilder(prefix).append(text, from, to);
+        if (to < text.length()) snippet.append("...");
+
+        List<Highlight> highlights = new ArrayList<>();
+        for (int[] match : matches) {
+            if (match[0] < from || match[1] > to) continue;
+            highlights.add(new Highlight(match[0] - from + prefix.length(), match[1] - from + prefix.length()));
+        }
+        return new SearchHit(entry, score, snippet.toString(), highlights);
+    }
+
+    public DiaryEntry getEntry() { return entry; }
+    public double getScore() { return score; }
+    public String getSnippet() { return snippet; }
+    public List<Highlight> getHighlights() { return highlights; }
+}
@@ -0,0 +1,791 @@
+package com.diarymanager.model;
+
+import java.io.*;
+import java.nio.file.*;
+import java.text.Normalizer;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Inverted full-text index over entry titles and bodies (term -> entry id -> positions).
+ * The index lives in memory and is persisted as an append-only log of PUT/DEL records
+ * that is replayed on startup and compacted once it holds too many superseded records.
+ * Each record carries the entry's modified date, so entries changed after their last record
+ * was written can be found and reindexed on startup; that lets autosaves of long entries keep
+ * their index update in memory until the next full write.
+ *
+ * Besides the unranked {@link #search}, {@link #rank} scores entries with BM25 over the title
+ * and body (term frequencies from the positions, field lengths from each record), with title
+ * matches weighted higher, and keeps only the best few in a bounded heap.
+ *
+ * Terms are kept sorted, so the terms starting with a prefix form one range, and every term is
+ * listed under its trigrams, so the terms containing a word are found from the terms sharing
+ * its rarest trigram instead of by testing the whole vocabulary. {@link #searchPrefix} serves
+ * search-as-you-type on top of that, and a BK-tree of the terms serves {@link #similarTerms},
+ * which finds the terms a word may be a misspelling of.
+ */
+public class SearchIndex {
+    private static final int MAGIC = 0x44494458; // "DIDX"
+    private static final int VERSION = 5;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final int COMPACTION_SLACK = 1000;
+    // Longer runs (encoded data, hashes) are cut down so terms stay small and storable
+    private static final int MAX_TERM_LENGTH = 64;
+    // BM25 parameters; a title occurrence counts as TITLE_BOOST body occurrences
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double TITLE_BOOST = 3.0;
+    // A term found for a query word by similarity rather than equality counts this much
+    private static final double SIMILAR_TERM_WEIGHT = 0.5;
+    // Lowest score first; equal scores ordered by id so the ranking is deterministic
+    private static final Comparator<Map.Entry<String, Double>> BY_SCORE =
+            Map.Entry.<String, Double>comparingByValue()
+                    .thenComparing(Map.Entry::getKey, Comparator.reverseOrder());
+
+    private final Path indexFile;
+
+    // term -> (entry id -> positions), sorted by term
+    private final NavigableMap<String, Map<String, int[]>> postings = new TreeMap<>();
+    // entry id -> (term -> positions), needed to unindex an entry and to compact the log
+    private final Map<String, Map<String, int[]>> forward = new HashMap<>();
+    // entry id -> modified date of the indexed version
+    private final Map<String, LocalDateTime> versions = new HashMap<>();
+    // entry id -> {title tokens, body tokens}; body positions start after the title and a gap
+    private final Map<String, int[]> lengths = new HashMap<>();
+    private long totalTitleLength;
+    private long totalBodyLength;
+    // Sum of the entries' distinct term counts
+    private long totalTerms;
+    // Every term indexed since the last clear, numbered, and trigram -> ids of the terms
+    // containing it in ascending order. Terms keep their number after their last entry is
+    // gone until the next compaction; lookups skip terms without postings.
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<String> termNames = new ArrayList<>();
+    private final Map<String, IdList> trigrams = new HashMap<>();
+    // The same terms by folded spelling and edit distance
+    private final BkTree similar = new BkTree();
+    // Bumped by every change, so a caller can tell whether an earlier result is still current
+    private long generation;
+    // Indexed in memory but not yet written to the log
+    private final Set<String> unpersisted = new HashSet<>();
+    private int logRecords;
+
+    public SearchIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Replays the index log. Returns false when there is no usable index on disk and the
+     * caller has to rebuild it from the entry files.
+     */
+    public synchronized boolean load() {
+        clear();
+        if (!Files.exists(indexFile)) return false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                clear();
+                return false;
+            }
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (type == RECORD_PUT) {
+                    String id = in.readUTF();
+                    LocalDateTime version = LocalDateTime.parse(in.readUTF());
+                    int titleLength = in.readInt();
+                    int termCount = in.readInt();
+                    Map<String, int[]> terms = new HashMap<>(termCount * 2);
+                    for (int i = 0; i < termCount; i++) {
+                        String term = in.readUTF();
+                        int[] positions = new int[in.readInt()];
+                        for (int p = 0; p < positions.length; p++) {
+                            positions[p] = in.readInt();
+                        }
+                        terms.put(term, positions);
+                    }
+                    apply(id, new Document(terms, titleLength), version);
+                } else if (type == RECORD_DELETE) {
+                    unindex(in.readUTF());
+                } else {
+                    throw new IOException("Corrupt index record type " + type);
+                }
+                logRecords++;
+            }
+            return true;
+        } catch (EOFException e) {
+            // Torn tail from an interrupted append; everything before it is still valid, but
+            // later appends would land behind the partial record and be lost on the next
+            // replay, so the log is rewritten without it
+            try {
+                compact();
+                return true;
+            } catch (IOException ex) {
+                System.err.println("Search index unwritable, rebuilding: " + ex.getMessage());
+                clear();
+                return false;
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Search index unreadable, rebuilding: " + e.getMessage());
+            clear();
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the whole index with the given entries and writes a fresh snapshot.
+     */
+    public synchronized void rebuild(Collection<DiaryEntry> entries) throws IOException {
+        clear();
+        for (DiaryEntry entry : entries) {
+            apply(entry.getId(), buildDocument(entry), entry.getModifiedDate());
+        }
+        compact();
+    }
+
+    public void put(DiaryEntry entry) throws IOException {
+        update(List.of(entry), List.of());
+    }
+
+    public void remove(String entryId) throws IOException {
+        update(List.of(), List.of(entryId));
+    }
+
+    /**
+     * Applies a batch of saves and deletes with a single append to the log, which also writes
+     * out any entries indexed with {@link #updateDeferred} since the last append.
+     */
+    public void update(Collection<DiaryEntry> saved, Collection<String> deleted) throws IOException {
+        // Tokenizing is the expensive part and needs no lock
+        Map<String, Document> built = new LinkedHashMap<>();
+        for (DiaryEntry entry : saved) {
+            built.put(entry.getId(), buildDocument(entry));
+        }
+
+        synchronized (this) {
+            List<String> removed = new ArrayList<>();
+            for (String entryId : deleted) {
+                if (forward.containsKey(entryId)) {
+                    unindex(entryId);
+                    removed.add(entryId);
+                }
+            }
+            for (DiaryEntry entry : saved) {
+                apply(entry.getId(), built.get(entry.getId()), entry.getModifiedDate());
+            }
+            Set<String> pending = new LinkedHashSet<>(built.keySet());
+            pending.addAll(unpersisted);
+            pending.retainAll(forward.keySet());
+            unpersisted.clear();
+            if (pending.isEmpty() && removed.isEmpty()) return;
+
+            try (DataOutputStream out = openLog()) {
+                for (String entryId : pending) {
+                    writePut(out, entryId, forward.get(entryId));
+                }
+                for (String entryId : removed) {
+                    out.writeByte(RECORD_DELETE);
+                    out.writeUTF(entryId);
+                }
+            }
+            logRecords += pending.size() + removed.size();
+            compactIfNeeded();
+        }
+    }
+
+    /**
+     * Indexes the entries in memory only. They are written with the next update() or flush();
+     * if that never happens, their modified dates no longer match on the next start and
+     * {@link #isCurrent} reports them for reindexing.
+     */
+    public void updateDeferred(Collection<DiaryEntry> saved) {
+        Map<String, Document> built = new HashMap<>();
+        for (DiaryEntry entry : saved) {
+            built.put(entry.getId(), buildDocument(entry));
+        }
+        synchronized (this) {
+            for (DiaryEntry entry : saved) {
+                apply(entry.getId(), built.get(entry.getId()), entry.getModifiedDate());
+                unpersisted.add(entry.getId());
+            }
+        }
+    }
+
+    public void flush() throws IOException {
+        update(List.of(), List.of());
+    }
+
+    /**
+     * True when the indexed version of the entry is the one last modified at {@code modified}.
+     */
+    public synchronized boolean isCurrent(String entryId, LocalDateTime modified) {
+        return modified != null && modified.equals(versions.get(entryId));
+    }
+
+    public synchronized Set<String> indexedIds() {
+        return new HashSet<>(forward.keySet());
+    }
+
+    public synchronized boolean contains(String entryId) {
+        return forward.containsKey(entryId);
+    }
+
+    /**
+     * Returns the ids of entries whose title or body contains the query. A single word matches
+     * any indexed term containing it; several words must appear as a phrase, where the first
+     * word may be a term suffix and the last word a term prefix, like a substring would. A query
+     * without any word, e.g. only punctuation, matches nothing.
+     */
+    public synchronized Set<String> search(String query) {
+        List<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) return new HashSet<>();
+
+        if (tokens.size() == 1) {
+            Set<String> ids = new HashSet<>();
+            for (String term : termsContaining(tokens.get(0))) {
+                ids.addAll(postings.get(term).keySet());
+            }
+            return ids;
+        }
+
+        Map<String, Set<Integer>> current = positionsFor(tokens.get(0), 0, tokens.size());
+        for (int i = 1; i < tokens.size() && !current.isEmpty(); i++) {
+            Map<String, Set<Integer>> next = positionsFor(tokens.get(i), i, tokens.size());
+            Map<String, Set<Integer>> chained = new HashMap<>();
+            for (Map.Entry<String, Set<Integer>> e : next.entrySet()) {
+                Set<Integer> previous = current.get(e.getKey());
+                if (previous == null) continue;
+                for (Integer position : e.getValue()) {
+                    if (previous.contains(position - 1)) {
+                        chained.computeIfAbsent(e.getKey(), k -> new HashSet<>()).add(position);
+                    }
+                }
+            }
+            current = chained;
+        }
+        return current.keySet();
+    }
+
+    /**
+     * Ids of the entries containing every word of the query, where the last word only has to
+     * start a term unless the query ends after it, since it may still be being typed. With
+     * {@code within} set only those entries can match: a caller whose query only grew since its
+     * last call passes that call's result, as typing more can only narrow it down.
+     */
+    public synchronized Set<String> searchPrefix(String query, Set<String> within) {
+        PrefixQuery parsed = new PrefixQuery(query);
+        // Null while every entry still matches; never modified, as it may be the caller's set
+        Set<String> matches = within;
+        for (String word : parsed.words) {
+            Map<String, int[]> list = postings.get(word);
+            if (list == null) return new HashSet<>();
+            matches = intersect(matches, list.keySet());
+        }
+        if (parsed.prefix == null) return new HashSet<>(matches != null ? matches : forward.keySet());
+
+        Collection<Map<String, int[]>> range = termsStartingWith(parsed.prefix).values();
+        Set<String> result = new HashSet<>();
+        if (matches == null) {
+            for (Map<String, int[]> list : range) result.addAll(list.keySet());
+            return result;
+        }
+
+        // A short prefix starts many terms; checking the terms of a few candidates is cheaper
+        // than walking all their postings
+        long rangePostings = 0;
+        for (Map<String, int[]> list : range) rangePostings += list.size();
+        long candidateTerms = matches.size() * (totalTerms / Math.max(1, forward.size()) + 1);
+        if (candidateTerms < rangePostings) {
+            for (String entryId : matches) {
+                if (startsTerm(forward.get(entryId), parsed.prefix)) result.add(entryId);
+            }
+        } else {
+            for (Map<String, int[]> list : range) {
+                for (String entryId : list.keySet()) {
+                    if (matches.contains(entryId)) result.add(entryId);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * An upper bound of the number of entries {@link #searchPrefix} would return for the query:
+     * the entries having its rarest word, or starting a term with its last one.
+     */
+    public synchronized int estimatePrefixMatches(String query) {
+        PrefixQuery parsed = new PrefixQuery(query);
+        int estimate = forward.size();
+        for (String word : parsed.words) {
+            Map<String, int[]> list = postings.get(word);
+            estimate = Math.min(estimate, list == null ? 0 : list.size());
+        }
+        if (parsed.prefix != null && estimate > 0) {
+            long rangePostings = 0;
+            for (Map<String, int[]> list : termsStartingWith(parsed.prefix).values()) {
+                rangePostings += list.size();
+                if (rangePostings >= estimate) break;
+            }
+            estimate = (int) Math.min(estimate, rangePostings);
+        }
+        return estimate;
+    }
+
+    /**
+     * The first {@code limit} of the given entries that {@link #searchPrefix} would match, in
+     * their order. When most entries match, checking entries one by one until enough are found
+     * is far cheaper than collecting every match.
+     */
+    public synchronized List<String> firstPrefixMatches(String query, Iterator<String> entryIds, int limit) {
+        PrefixQuery parsed = new PrefixQuery(query);
+        List<String> found = new ArrayList<>();
+        while (found.size() < limit && entryIds.hasNext()) {
+            String entryId = entryIds.next();
+            Map<String, int[]> terms = forward.get(entryId);
+            if (terms == null) continue;
+            boolean matches = true;
+            for (String word : parsed.words) {
+                if (!terms.containsKey(word)) {
+                    matches = false;
+                    break;
+                }
+            }
+            if (matches && (parsed.prefix == null || startsTerm(terms, parsed.prefix))) found.add(entryId);
+        }
+        return found;
+    }
+
+    // A search-as-you-type query: whole words, and the word still being typed if any
+    private static class PrefixQuery {
+        final List<String> words;
+        final String prefix;
+
+        PrefixQuery(String query) {
+            List<String> tokens = tokenize(query);
+            boolean typing = !tokens.isEmpty() && Character.isLetterOrDigit(query.charAt(query.length() - 1));
+            words = typing ? tokens.subList(0, tokens.size() - 1) : tokens;
+            prefix = typing ? tokens.get(tokens.size() - 1) : null;
+        }
+    }
+
+    private static boolean startsTerm(Map<String, int[]> terms, String prefix) {
+        if (terms == null) return false;
+        for (String term : terms.keySet()) {
+            if (term.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    private static Set<String> intersect(Set<String> matches, Set<String> ids) {
+        if (matches == null) return new HashSet<>(ids);
+        Set<String> smaller = matches.size() <= ids.size() ? matches : ids;
+        Set<String> larger = smaller == matches ? ids : matches;
+        Set<String> result = new HashSet<>();
+        for (String id : smaller) {
+            if (larger.contains(id)) result.add(id);
+        }
+        return result;
+    }
+
+    /**
+     * Changes whenever an entry is indexed or unindexed.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * The best {@code limit} entries for the words of the query, best first, with their scores.
+     * Only entries containing at least one of the words and accepted by {@code filter} (null
+     * accepts all) are scored, and a min-heap of {@code limit} entries keeps the best so far.
+     */
+    public synchronized LinkedHashMap<String, Double> rank(String query, int limit, Predicate<String> filter) {
+        Map<String, Set<String>> wordTerms = new LinkedHashMap<>();
+        for (String token : tokenize(query)) wordTerms.put(token, Set.of(token));
+        return rank(wordTerms, limit, filter);
+    }
+
+    /**
+     * Like {@link #rank(String, int, Predicate)}, for query words that each stand for a set of
+     * terms, as returned by {@link #similarTerms}. An entry scores for a word with its best
+     * scoring term of the set, and terms other than the word itself count less.
+     */
+    public synchronized LinkedHashMap<String, Double> rank(Map<String, Set<String>> wordTerms, int limit,
+                                                           Predicate<String> filter) {
+        LinkedHashMap<String, Double> ranked = new LinkedHashMap<>();
+        int entryCount = forward.size();
+        if (wordTerms.isEmpty() || entryCount == 0 || limit <= 0) return ranked;
+
+        double averageTitle = Math.max(1, (double) totalTitleLength / entryCount);
+        double averageBody = Math.max(1, (double) totalBodyLength / entryCount);
+        Map<String, Double> scores = new HashMap<>();
+        Map<String, Boolean> accepted = new HashMap<>();
+
+        for (Map.Entry<String, Set<String>> word : wordTerms.entrySet()) {
+            Map<String, Double> wordScores = new HashMap<>();
+            for (String term : word.getValue()) {
+                Map<String, int[]> list = postings.get(term);
+                if (list == null) continue;
+                // Rare words weigh more than common ones
+                double idf = Math.log(1 + (entryCount - list.size() + 0.5) / (list.size() + 0.5));
+                double weight = term.equals(word.getKey()) ? 1 : SIMILAR_TERM_WEIGHT;
+
+                for (Map.Entry<String, int[]> posting : list.entrySet()) {
+                    String entryId = posting.getKey();
+                    if (filter != null && !accepted.computeIfAbsent(entryId, filter::test)) continue;
+
+                    int[] fieldLengths = lengths.get(entryId);
+                    int titleFrequency = 0;
+                    for (int position : posting.getValue()) {
+                        if (position < fieldLengths[0]) titleFrequency++;
+                    }
+                    int bodyFrequency = posting.getValue().length - titleFrequency;
+
+                    double frequency = TITLE_BOOST * titleFrequency / (1 - B + B * fieldLengths[0] / averageTitle)
+                            + bodyFrequency / (1 - B + B * fieldLengths[1] / averageBody);
+                    wordScores.merge(entryId, weight * idf * frequency / (K1 + frequency), Math::max);
+                }
+            }
+            wordScores.forEach((entryId, score) -> scores.merge(entryId, score, Double::sum));
+        }
+
+        PriorityQueue<Map.Entry<String, Double>> best = new PriorityQueue<>(limit + 1, BY_SCORE);
+        for (Map.Entry<String, Double> scored : scores.entrySet()) {
+            if (best.size() < limit) {
+                best.add(scored);
+            } else if (BY_SCORE.compare(scored, best.peek()) > 0) {
+                best.poll();
+                best.add(scored);
+            }
+        }
+        List<Map.Entry<String, Double>> top = new ArrayList<>(best);
+        top.sort(BY_SCORE.reversed());
+        for (Map.Entry<String, Double> scored : top) {
+            ranked.put(scored.getKey(), scored.getValue());
+        }
+        return ranked;
+    }
+
+    /**
+     * For each distinct word of the query, the indexed terms at most {@code maxDistance} edits
+     * (inserted, deleted or replaced letters) away from it, the word itself included if it is
+     * indexed. Short words allow fewer edits, as almost every short term is close to them:
+     * none up to 3 letters, one up to 6. With {@code foldAccents} the comparison also ignores
+     * accents, so "cafe" finds "café".
+     */
+    public synchronized Map<String, Set<String>> similarTerms(String query, int maxDistance, boolean foldAccents) {
+        Map<String, Set<String>> wordTerms = new LinkedHashMap<>();
+        for (String word : tokenize(query)) {
+            if (wordTerms.containsKey(word)) continue;
+            int distance = Math.min(maxDistance, word.length() <= 3 ? 0 : word.length() <= 6 ? 1 : 2);
+            Set<String> terms = new LinkedHashSet<>();
+            if (postings.containsKey(word)) terms.add(word);
+
+            // Folding never makes two words further apart, so the tree of folded terms finds
+            // every candidate; without folding they are checked again as spelt
+            similar.search(fold(word), distance, termId -> {
+                String term = termNames.get(termId);
+                if (!postings.containsKey(term)) return;
+                if (foldAccents || BkTree.distance(word, term) <= distance) terms.add(term);
+            });
+            wordTerms.put(word, terms);
+        }
+        return wordTerms;
+    }
+
+    /**
+     * The term with accented letters replaced by their base letter. Letter by letter, so a term
+     * keeps its length and folding never makes two terms further apart.
+     */
+    static String fold(String term) {
+        char[] folded = null;
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c < 0x80) continue;
+            String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+            if (decomposed.length() < 2 || Character.getType(decomposed.charAt(1)) != Character.NON_SPACING_MARK) continue;
+            if (folded == null) folded = term.toCharArray();
+            folded[i] = decomposed.charAt(0);
+        }
+        return folded == null ? term : new String(folded);
+    }
+
+    /**
+     * Character ranges [start, end) of the words of {@code text} that are among {@code terms},
+     * using the same word rules as the index. Words are compared in place, ignoring case, so
+     * a long text is not copied word by word.
+     */
+    static List<int[]> matchOffsets(String text, Set<String> terms) {
+        List<int[]> matches = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                int length = Math.min(i, start + MAX_TERM_LENGTH) - start;
+                for (String term : terms) {
+                    if (term.length() == length && text.regionMatches(true, start, term, 0, length)) {
+                        matches.add(new int[] { start, i });
+                        break;
+                    }
+                }
+                start = -1;
+            }
+        }
+        return matches;
+    }
+
+    private Map<String, Set<Integer>> positionsFor(String token, int index, int count) {
+        Collection<String> terms;
+        if (index == 0) {
+            terms = new ArrayList<>();
+            for (String term : termsContaining(token)) {
+                if (term.endsWith(token)) terms.add(term);
+            }
+        } else if (index == count - 1) {
+            terms = termsStartingWith(token).keySet();
+        } else {
+            terms = postings.containsKey(token) ? List.of(token) : List.of();
+        }
+
+        Map<String, Set<Integer>> result = new HashMap<>();
+        for (String term : terms) {
+            for (Map.Entry<String, int[]> posting : postings.get(term).entrySet()) {
+                Set<Integer> positions = result.computeIfAbsent(posting.getKey(), k -> new HashSet<>());
+                for (int p : posting.getValue()) positions.add(p);
+            }
+        }
+        return result;
+    }
+
+    private SortedMap<String, Map<String, int[]>> termsStartingWith(String prefix) {
+        return postings.subMap(prefix, prefix + Character.MAX_VALUE);
+    }
+
+    // Indexed terms containing the token
+    private List<String> termsContaining(String token) {
+        List<String> terms = new ArrayList<>();
+        if (token.length() < 3) {
+            for (String term : postings.keySet()) {
+                if (term.contains(token)) terms.add(term);
+            }
+            return terms;
+        }
+
+        IdList rarest = null;
+        for (int i = 0; i + 3 <= token.length(); i++) {
+            IdList list = trigrams.get(token.substring(i, i + 3));
+            if (list == null) return terms;
+            if (rarest == null || list.size < rarest.size) rarest = list;
+        }
+        for (int i = 0; i < rarest.size; i++) {
+            String term = termNames.get(rarest.ids[i]);
+            if (term.contains(token) && postings.containsKey(term)) terms.add(term);
+        }
+        return terms;
+    }
+
+    private void addTerm(String term) {
+        if (termIds.containsKey(term)) return;
+        int id = termNames.size();
+        termIds.put(term, id);
+        termNames.add(term);
+        similar.add(fold(term), id);
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            IdList list = trigrams.computeIfAbsent(term.substring(i, i + 3), k -> new IdList());
+            // A trigram repeated within the term is listed once
+            if (list.size == 0 || list.ids[list.size - 1] != id) list.add(id);
+        }
+    }
+
+    // Growable int array
+    private static class IdList {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    // An entry's terms with their positions, and how many of the positions belong to the title
+    private static class Document {
+        final Map<String, int[]> terms;
+        final int titleLength;
+
+        Document(Map<String, int[]> terms, int titleLength) {
+            this.terms = terms;
+            this.titleLength = titleLength;
+        }
+    }
+
+    private static Document buildDocument(DiaryEntry entry) {
+        List<String> titleTokens = tokenize(entry.getTitle());
+        String content = HtmlTextExtractor.toPlainText(entry.getContent(), Integer.MAX_VALUE);
+        List<String> contentTokens = tokenize(content);
+
+        Map<String, List<Integer>> positions = new HashMap<>();
+        for (int i = 0; i < titleTokens.size(); i++) {
+            positions.computeIfAbsent(titleTokens.get(i), k -> new ArrayList<>()).add(i);
+        }
+        // Leave a gap so a phrase cannot run from the title into the body
+        int offset = titleTokens.size() + 1;
+        for (int i = 0; i < contentTokens.size(); i++) {
+            positions.computeIfAbsent(contentTokens.get(i), k -> new ArrayList<>()).add(offset + i);
+        }
+
+        Map<String, int[]> terms = new HashMap<>(positions.size() * 2);
+        for (Map.Entry<String, List<Integer>> e : positions.entrySet()) {
+            terms.put(e.getKey(), e.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return new Document(terms, titleTokens.size());
+    }
+
+    private void apply(String entryId, Document document, LocalDateTime version) {
+        unindex(entryId);
+        Map<String, int[]> terms = document.terms;
+        forward.put(entryId, terms);
+        versions.put(entryId, version);
+        int positions = 0;
+        for (int[] termPositions : terms.values()) positions += termPositions.length;
+        // Each title token has exactly one position
+        int[] fieldLengths = { document.titleLength, positions - document.titleLength };
+        lengths.put(entryId, fieldLengths);
+        totalTitleLength += fieldLengths[0];
+        totalBodyLength += fieldLengths[1];
+        totalTerms += terms.size();
+        for (Map.Entry<String, int[]> e : terms.entrySet()) {
+            Map<String, int[]> list = postings.get(e.getKey());
+            if (list == null) {
+                list = new HashMap<>();
+                postings.put(e.getKey(), list);
+                addTerm(e.getKey());
+            }
+            list.put(entryId, e.getValue());
+        }
+        generation++;
+    }
+
+    private void unindex(String entryId) {
+        Map<String, int[]> terms = forward.remove(entryId);
+        versions.remove(entryId);
+        int[] fieldLengths = lengths.remove(entryId);
+        if (terms == null) return;
+        totalTitleLength -= fieldLengths[0];
+        totalBodyLength -= fieldLengths[1];
+        totalTerms -= terms.size();
+        generation++;
+
+        for (String term : terms.keySet()) {
+            Map<String, int[]> list = postings.get(term);
+            if (list != null) {
+                list.remove(entryId);
+                if (list.isEmpty()) postings.remove(term);
+            }
+        }
+    }
+
+    private void clear() {
+        postings.clear();
+        forward.clear();
+        versions.clear();
+        lengths.clear();
+        totalTitleLength = 0;
+        totalBodyLength = 0;
+        totalTerms = 0;
+        termIds.clear();
+        termNames.clear();
+        trigrams.clear();
+        similar.clear();
+        generation++;
+        unpersisted.clear();
+        logRecords = 0;
+    }
+
+    private DataOutputStream openLog() throws IOException {
+        boolean fresh = !Files.exists(indexFile);
+        if (fresh) Files.createDirectories(indexFile.toAbsolutePath().getParent());
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+        if (fresh) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        return out;
+    }
+
+    private void writePut(DataOutputStream out, String entryId, Map<String, int[]> terms) throws IOException {
+        out.writeByte(RECORD_PUT);
+        out.writeUTF(entryId);
+        out.writeUTF(versions.get(entryId).toString());
+        out.writeInt(lengths.get(entryId)[0]);
+        out.writeInt(terms.size());
+        for (Map.Entry<String, int[]> e : terms.entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeInt(e.getValue().length);
+            for (int p : e.getValue()) out.writeInt(p);
+        }
+    }
+
+    private void compactIfNeeded() throws IOException {
+        if (logRecords > forward.size() * 2 + COMPACTION_SLACK) {
+            compact();
+        }
+    }
+
+    private void compact() throws IOException {
+        Files.createDirectories(indexFile.toAbsolutePath().getParent());
+        Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, Map<String, int[]>> e : forward.entrySet()) {
+                writePut(out, e.getKey(), e.getValue());
+            }
+        }
+        unpersisted.clear();
+        Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logRecords = forward.size();
+        pruneTerms();
+    }
+
+    // Renumbers the terms that still have postings, so terms of edited or deleted entries do not pile up
+    private void pruneTerms() {
+        // Every term with postings was added, so equal counts mean there is nothing to drop
+        if (termNames.size() == postings.size()) return;
+        termIds.clear();
+        termNames.clear();
+        trigrams.clear();
+        similar.clear();
+        for (String term : postings.keySet()) {
+            addTerm(term);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.diarymanager.model;
+
+import java.util.*;
+
+/**
+ * Every tag used in the diary, numbered. A diary has a few hundred distinct tags spread over
+ * thousands of entries, so the catalog stores each entry's tags as a sorted array of these ids
+ * and entries read from disk get their tag strings swapped for one shared instance per
+ * spelling. Tags that differ only in case or surrounding spaces share an id; the spelling seen
+ * first is the tag's name. Ids are never reused.
+ */
+public class TagDictionary {
+    private static final int[] NO_TAGS = new int[0];
+
+    // Guarded by this
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, String> spellings = new HashMap<>();
+
+    static String keyOf(String tag) {
+        return tag.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** The tag's id, adding it if it is new; -1 for a blank tag. */
+    public synchronized int idOf(String tag) {
+        String key = keyOf(tag);
+        if (key.isEmpty()) return -1;
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = names.size();
+            ids.put(key, id);
+            names.add(intern(tag.trim()));
+        }
+        return id;
+    }
+
+    /** The tag's id, or -1 when no entry has ever used it. */
+    public synchronized int find(String tag) {
+        Integer id = ids.get(keyOf(tag));
+        return id != null ? id : -1;
+    }
+
+    public synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+
+    public synchronized int size() {
+        return names.size();
+    }
+
+    /** Sorted, distinct ids of the given tags, adding new ones; blank tags are left out. */
+    public synchronized int[] idsOf(String[] tags) {
+        if (tags == null || tags.length == 0) return NO_TAGS;
+        int[] tagIds = new int[tags.length];
+        int count = 0;
+        for (String tag : tags) {
+            int id = idOf(tag);
+            if (id >= 0) tagIds[count++] = id;
+        }
+        Arrays.sort(tagIds, 0, count);
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            if (distinct == 0 || tagIds[distinct - 1] != tagIds[i]) tagIds[distinct++] = tagIds[i];
+        }
+        return distinct == 0 ? NO_TAGS : Arrays.copyOf(tagIds, distinct);
+    }
+
+    /** Names of the given ids, for display and for writing entries back. */
+    public synchronized String[] namesOf(int[] tagIds) {
+        String[] tags = new String[tagIds.length];
+        for (int i = 0; i < tagIds.length; i++) tags[i] = names.get(tagIds[i]);
+        return tags;
+    }
+
+    /** The shared instance of this exact spelling. */
+    public synchronized String intern(String tag) {
+        String shared = spellings.putIfAbsent(tag, tag);
+        return shared != null ? shared : tag;
+    }
+
+    /** Replaces each tag of the array by its shared instance, in place. */
+    public synchronized void intern(String[] tags) {
+        if (tags == null) return;
+        for (int i = 0; i < tags.length; i++) {
+            if (tags[i] != null) tags[i] = intern(tags[i]);
+        }
+    }
+}
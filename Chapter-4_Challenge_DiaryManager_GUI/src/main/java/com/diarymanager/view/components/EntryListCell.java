@@ -0,0 +1,119 @@
+package com.diarymanager.view.components;
+
+import com.diarymanager.model.DiaryEntry;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.VBox;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Row of the entry browser list. The cell builds its labels once and a ListView reuses a
+ * handful of cells for every row, so showing a row only swaps label texts. The texts are
+ * computed once per entry and kept in a shared DisplayCache, and the look comes from the
+ * entry-cell style classes in the theme stylesheets.
+ */
+public final class EntryListCell extends ListCell<DiaryEntry> {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMMM dd, yyyy - HH:mm");
+    private static final int PREVIEW_LENGTH = 60;
+
+    private final DisplayCache cache;
+    private final IntConsumer onRowShown;
+    private final HBox content = new HBox();
+    private final Label moodLabel = new Label();
+    private final Label titleLabel = new Label();
+    private final Label dateLabel = new Label();
+    private final Label previewLabel = new Label();
+
+    /**
+     * The texts a row shows for one entry, derived once per entry.
+     */
+    public static final class DisplayFields {
+        final String moodIcon;
+        final String title;
+        final String date;
+        final String preview;
+
+        DisplayFields(DiaryEntry entry) {
+            moodIcon = entry.getMood() != null && !entry.getMood().isEmpty() ? getMoodEmoji(entry.getMood()) : "";
+            title = entry.getTitle();
+            date = entry.getModifiedDate().format(DATE_FORMATTER);
+            preview = entry.getPreview(PREVIEW_LENGTH);
+        }
+    }
+
+    /**
+     * Display fields per entry, shared by all cells of a list. Saved entries reach the list as
+     * new objects, so an entry's fields never go stale, and entries that leave the list are
+     * dropped with them. Only used on the FX thread.
+     */
+    public static final class DisplayCache {
+        private final Map<DiaryEntry, DisplayFields> fields = new WeakHashMap<>();
+
+        public DisplayFields fieldsOf(DiaryEntry entry) {
+            return fields.computeIfAbsent(entry, DisplayFields::new);
+        }
+
+        public void clear() {
+            fields.clear();
+        }
+    }
+
+    /**
+     * @param onRowShown called with the row index whenever the cell starts showing an entry
+     */
+    public EntryListCell(DisplayCache cache, IntConsumer onRowShown) {
+        this.cache = cache;
+        this.onRowShown = onRowShown;
+
+        getStyleClass().add("entry-cell");
+        content.getStyleClass().add("entry-cell-content");
+        moodLabel.getStyleClass().add("entry-cell-mood");
+        titleLabel.getStyleClass().add("entry-cell-title");
+        dateLabel.getStyleClass().add("entry-cell-date");
+        previewLabel.getStyleClass().add("entry-cell-preview");
+        previewLabel.setWrapText(true);
+
+        VBox info = new VBox(titleLabel, dateLabel, previewLabel);
+        info.getStyleClass().add("entry-cell-info");
+        content.getChildren().addAll(moodLabel, info);
+
+        setText(null);
+        setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+    }
+
+    @Override
+    protected void updateItem(DiaryEntry entry, boolean empty) {
+        super.updateItem(entry, empty);
+
+        if (empty || entry == null) {
+            setGraphic(null);
+            return;
+        }
+
+        DisplayFields fields = cache.fieldsOf(entry);
+        moodLabel.setText(fields.moodIcon);
+        titleLabel.setText(fields.title);
+        dateLabel.setText(fields.date);
+        previewLabel.setText(fields.preview);
+        setGraphic(content);
+
+        onRowShown.accept(getIndex());
+    }
+
+    private static String getMoodEmoji(String mood) {
+        if (mood.contains("Happy")) return "😊";
+        if (mood.contains("Sad")) return "😢";
+        if (mood.contains("Excited")) return "🤩";
+        if (mood.contains("Calm")) return "😌";
+        if (mood.contains("Angry")) return "😠";
+        if (mood.contains("Thoughtful")) return "🤔";
+        if (mood.contains("Tired")) return "😴";
+        if (mood.contains("Grateful")) return "🤗";
+        return "📝";
+    }
+}
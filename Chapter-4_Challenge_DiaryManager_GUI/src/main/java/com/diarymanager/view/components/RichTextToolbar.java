@@ -10,7 +10,7 @@ import javafx.scene.web.HTMLEditor;
 import java.util.Arrays;
 import java.util.List;
 
-public class RichTextToolbar extends ToolBar {
+public final class RichTextToolbar extends ToolBar {
     private HTMLEditor editor;
 
     public RichTextToolbar(HTMLEditor editor) {
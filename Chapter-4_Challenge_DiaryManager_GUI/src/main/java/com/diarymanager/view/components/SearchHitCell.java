@@ -0,0 +1,75 @@
+package com.diarymanager.view.components;
+
+import com.diarymanager.model.SearchHit;
+import javafx.scene.Node;
+import javafx.scene.control.ContentDisplay;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.layout.VBox;
+import javafx.scene.text.Text;
+import javafx.scene.text.TextFlow;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Row of a search result list: title, date and the hit's snippet with the matched words
+ * highlighted. Like EntryListCell it builds its nodes once and only swaps texts per row.
+ */
+public final class SearchHitCell extends ListCell<SearchHit> {
+    private final VBox content = new VBox();
+    private final Label titleLabel = new Label();
+    private final Label dateLabel = new Label();
+    private final TextFlow snippetFlow = new TextFlow();
+
+    public SearchHitCell() {
+        getStyleClass().add("search-hit-cell");
+        content.getStyleClass().add("entry-cell-info");
+        titleLabel.getStyleClass().add("entry-cell-title");
+        dateLabel.getStyleClass().add("entry-cell-date");
+        snippetFlow.getStyleClass().add("search-snippet");
+        content.getChildren().addAll(titleLabel, dateLabel, snippetFlow);
+        // A TextFlow only wraps when its width is bounded
+        snippetFlow.prefWidthProperty().bind(widthProperty().subtract(40));
+
+        setText(null);
+        setContentDisplay(ContentDisplay.GRAPHIC_ONLY);
+    }
+
+    @Override
+    protected void updateItem(SearchHit hit, boolean empty) {
+        super.updateItem(hit, empty);
+
+        if (empty || hit == null) {
+            setGraphic(null);
+            return;
+        }
+
+        titleLabel.setText(hit.getEntry().getTitle());
+        dateLabel.setText(hit.getEntry().getFormattedDate());
+        snippetFlow.getChildren().setAll(snippetTexts(hit));
+        setGraphic(content);
+    }
+
+    private static List<Node> snippetTexts(SearchHit hit) {
+        String snippet = hit.getSnippet();
+        List<Node> texts = new ArrayList<>(hit.getHighlights().size() * 2 + 1);
+        int position = 0;
+        for (SearchHit.Highlight highlight : hit.getHighlights()) {
+            if (highlight.getStart() > position) {
+                texts.add(text(snippet.substring(position, highlight.getStart()), "search-snippet-text"));
+            }
+            texts.add(text(snippet.substring(highlight.getStart(), highlight.getEnd()), "search-highlight"));
+            position = highlight.getEnd();
+        }
+        if (position < snippet.length()) {
+            texts.add(text(snippet.substring(position), "search-snippet-text"));
+        }
+        return texts;
+    }
+
+    private static Text text(String value, String styleClass) {
+        Text text = new Text(value);
+        text.getStyleClass().add(styleClass);
+        return text;
+    }
+}
@@ -1,5 +1,11 @@
 package com.diarymanager.view.components;
 
+import com.diarymanager.model.DiaryEntry;
+import com.diarymanager.model.DiaryManager;
+import com.diarymanager.model.EntryQuery;
+import com.diarymanager.model.LiveSearch;
+import com.diarymanager.model.SearchHit;
+import javafx.concurrent.Service;
 import javafx.scene.control.*;
 import javafx.scene.layout.*;
 import javafx.geometry.Insets;
@@ -8,18 +14,30 @@ import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+public final class SearchPanel extends VBox {
+    private static final int RESULT_LIMIT = 50;
 
-public class SearchPanel extends VBox {
     private TextField searchField;
     private ComboBox<String> moodCombo;
     private DatePicker datePicker;
+    private CheckBox typoCheck;
     private Button searchButton;
     private Button clearButton;
     private Label resultsLabel;
-    private ListView<String> resultsList;
+    private ListView<SearchHit> resultsList;
 
+    private DiaryManager diaryManager;
+    private Service<List<SearchHit>> searchService;
+    // Search-as-you-type: results follow the search field, newest first
+    private final LiveSearch liveSearch = new LiveSearch();
+    private Service<List<SearchHit>> liveService;
     private Runnable onSearchCallback;
     private Runnable onClearCallback;
+    private Consumer<DiaryEntry> onOpenEntryCallback;
 
     public SearchPanel() {
         initializeUI();
@@ -38,6 +56,9 @@ public class SearchPanel extends VBox {
         // Search field
         searchField = new TextField();
         searchField.setPromptText("Search in titles and content...");
+        searchField.setTooltip(new Tooltip("Words, \"phrases\", AND / OR / NOT, (groups),\n"
+                + "title:word  tag:name  mood:happy  date:2024-01..2024-03,\n"
+                + "or /regex/ to scan titles and text"));
         searchField.setPrefHeight(35);
 
         // Mood filter
@@ -76,6 +97,9 @@ public class SearchPanel extends VBox {
 
         dateBox.getChildren().addAll(dateLabel, datePicker);
 
+        // Fuzzy search
+        typoCheck = new CheckBox("Tolerate typos and accents");
+
         // Buttons
         HBox buttonBox = new HBox(15);
         buttonBox.setAlignment(Pos.CENTER_RIGHT);
@@ -95,6 +119,7 @@ public class SearchPanel extends VBox {
         resultsLabel.setStyle("-fx-font-weight: bold; -fx-text-fill: #6c757d;");
 
         resultsList = new ListView<>();
+        resultsList.setCellFactory(param -> new SearchHitCell());
         resultsList.setPrefHeight(200);
         resultsList.setStyle("-fx-border-color: #ced4da; -fx-border-radius: 3;");
 
@@ -104,6 +129,7 @@ public class SearchPanel extends VBox {
                 searchField,
                 moodBox,
                 dateBox,
+                typoCheck,
                 buttonBox,
                 new Separator(),
                 resultsLabel,
@@ -114,6 +140,16 @@ public class SearchPanel extends VBox {
     private void setupEvents() {
         searchButton.setOnAction(e -> performSearch());
         clearButton.setOnAction(e -> clearSearch());
+        resultsList.setOnMouseClicked(event -> {
+            SearchHit selected = resultsList.getSelectionModel().getSelectedItem();
+            if (event.getClickCount() == 2 && selected != null && onOpenEntryCallback != null) {
+                onOpenEntryCallback.accept(selected.getEntry());
+            }
+        });
+
+        searchField.textProperty().addListener((obs, oldText, newText) -> performLiveSearch());
+        moodCombo.valueProperty().addListener((obs, oldMood, newMood) -> performLiveSearch());
+        datePicker.valueProperty().addListener((obs, oldDate, newDate) -> performLiveSearch());
 
         // Enable search button only when there's some input
         searchButton.disableProperty().bind(
@@ -150,14 +186,35 @@ public class SearchPanel extends VBox {
         // Clear previous results
         resultsList.getItems().clear();
 
-        // Add placeholder results (in real app, these would come from DiaryManager)
-        ObservableList<String> placeholderResults = FXCollections.observableArrayList(
-                "Sample result 1 - " + (query.isEmpty() ? "Diary entry" : query),
-                "Sample result 2 - Another entry",
-                "Sample result 3 - Test entry"
-        );
-
-        resultsList.setItems(placeholderResults);
+        if (diaryManager != null) {
+            cancelSearches();
+            Pattern pattern;
+            try {
+                pattern = EntryQuery.pattern(query);
+            } catch (IllegalArgumentException e) {
+                resultsLabel.setText(e.getMessage());
+                return;
+            }
+            // Ranked by relevance; the best results come first. Pattern matches come newest first
+            Service<List<SearchHit>> service = pattern != null
+                    ? diaryManager.searchPatternAsync(pattern, mood, null, date, date, RESULT_LIMIT)
+                    : typoCheck.isSelected()
+                    ? diaryManager.searchFuzzyAsync(query, mood, null, date, date, RESULT_LIMIT, true)
+                    : diaryManager.searchRankedAsync(query, mood, null, date, date, RESULT_LIMIT);
+            String moodFilter = mood;
+            startSearch(service, results -> {
+                // Nothing has the words as typed: maybe they are misspelt
+                if (results.isEmpty() && pattern == null && !typoCheck.isSelected() && !query.isEmpty()) {
+                    startSearch(diaryManager.searchFuzzyAsync(query, moodFilter, null, date, date, RESULT_LIMIT, true),
+                            fuzzyResults -> {
+                                setSearchResults(fuzzyResults);
+                                resultsLabel.setText("No exact matches; " + fuzzyResults.size() + " close matches");
+                            });
+                } else {
+                    setSearchResults(results);
+                }
+            });
+        }
 
         // Call callback if set
         if (onSearchCallback != null) {
@@ -165,10 +222,52 @@ public class SearchPanel extends VBox {
         }
     }
 
+    private void startSearch(Service<List<SearchHit>> service, Consumer<List<SearchHit>> onResults) {
+        searchService = service;
+        service.setOnSucceeded(event -> onResults.accept(service.getValue()));
+        service.setOnFailed(event -> resultsLabel.setText("Search failed: " + service.getException().getMessage()));
+        service.start();
+    }
+
+    private void performLiveSearch() {
+        if (diaryManager == null) return;
+        cancelSearches();
+
+        String query = searchField.getText();
+        if (query.isBlank()) {
+            liveSearch.reset();
+            return;
+        }
+        // Operators, scopes and patterns need the full search; it runs on Search
+        if (EntryQuery.usesSyntax(query) || query.strip().startsWith("/")) return;
+        Service<List<SearchHit>> service = diaryManager.searchAsYouTypeAsync(
+                liveSearch, query, getSelectedMood(), getSelectedDate(), getSelectedDate(), RESULT_LIMIT);
+        liveService = service;
+        service.setOnSucceeded(event -> {
+            // A keystroke may have started a newer search meanwhile
+            if (liveService == service) setSearchResults(service.getValue());
+        });
+        service.setOnFailed(event -> System.err.println("Live search failed: " + service.getException().getMessage()));
+        service.start();
+    }
+
+    // Stops the searches still running, e.g. when the panel is closed
+    public void cancelSearches() {
+        if (searchService != null && searchService.isRunning()) {
+            searchService.cancel();
+        }
+        if (liveService != null && liveService.isRunning()) {
+            liveService.cancel();
+        }
+        liveService = null;
+    }
+
     private void clearSearch() {
+        cancelSearches();
         searchField.clear();
         moodCombo.getSelectionModel().selectFirst();
         datePicker.setValue(null);
+        typoCheck.setSelected(false);
         resultsList.getItems().clear();
         resultsLabel.setText("Results will appear here");
 
@@ -192,6 +291,14 @@ public class SearchPanel extends VBox {
         return datePicker.getValue();
     }
 
+    public void focusSearchField() {
+        searchField.requestFocus();
+    }
+
+    public void setDiaryManager(DiaryManager manager) {
+        this.diaryManager = manager;
+    }
+
     // Callback setters
     public void setOnSearch(Runnable callback) {
         this.onSearchCallback = callback;
@@ -201,9 +308,14 @@ public class SearchPanel extends VBox {
         this.onClearCallback = callback;
     }
 
+    // Called with the entry of a double-clicked result
+    public void setOnOpenEntry(Consumer<DiaryEntry> callback) {
+        this.onOpenEntryCallback = callback;
+    }
+
     // Methods to update results
-    public void setSearchResults(ObservableList<String> results) {
-        resultsList.setItems(results);
+    public void setSearchResults(List<SearchHit> results) {
+        resultsList.setItems(FXCollections.observableArrayList(results));
         resultsLabel.setText("Found " + results.size() + " results");
     }
 
@@ -212,7 +324,7 @@ public class SearchPanel extends VBox {
         resultsLabel.setText("No results to display");
     }
 
-    public ListView<String> getResultsList() {
+    public ListView<SearchHit> getResultsList() {
         return resultsList;
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.diarymanager.model;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EntryQueryTest {
+    @TempDir
+    Path dir;
+
+    private EntryCatalog catalog;
+    private SearchIndex index;
+    private DiaryEntry rockAndRoll;
+    private DiaryEntry rockOnly;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        catalog = new EntryCatalog();
+        index = new SearchIndex(dir.resolve("index.log"));
+        rockAndRoll = new DiaryEntry("Concert", "<p>A night of rock and roll</p>");
+        rockOnly = new DiaryEntry("Quarry", "<p>Climbing the rock face</p>");
+        for (DiaryEntry entry : List.of(rockAndRoll, rockOnly)) {
+            catalog.put(entry);
+            index.put(entry);
+        }
+    }
+
+    @Test
+    void punctuationBetweenWordsIsIgnored() {
+        assertEquals(slotsOf(rockAndRoll), matches("rock & roll"));
+        assertEquals(slotsOf(rockAndRoll), matches("rock - roll"));
+        assertEquals(List.of("rock", "roll"), EntryQuery.parse("rock & roll").words());
+    }
+
+    @Test
+    void punctuationDoesNotWidenAnOr() {
+        assertEquals(slotsOf(rockAndRoll), matches("roll OR &"));
+    }
+
+    @Test
+    void punctuationAloneMatchesNothing() {
+        assertEquals(new BitSet(), matches("&"));
+    }
+
+    private BitSet matches(String query) {
+        return EntryQuery.parse(query).evaluate(catalog, index, null);
+    }
+
+    private BitSet slotsOf(DiaryEntry entry) {
+        BitSet slots = new BitSet();
+        slots.set(catalog.slotOf(entry.getId()));
+        return slots;
+    }
+}